@@ -0,0 +1,88 @@
+package top.parak.minibase.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key comparison of short (16 B) and long (256 B) keys, which differ in their last byte
+ * only, so that the whole keys are compared.
+ *
+ * <ul>
+ *     <li>{@code bytewise}: the byte-by-byte loop, as the baseline</li>
+ *     <li>{@code bytes}: {@link Bytes#compare(byte[], byte[])}, 8 bytes at a time</li>
+ *     <li>{@code keyValue}: {@link KeyValue#compareTo(KeyValue)} of views over encoded
+ *     KeyValues, which compares the keys in place</li>
+ * </ul>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyCompareBenchmark {
+
+    @Param({"16", "256"})
+    public int keyLength;
+
+    private byte[]   a;
+    private byte[]   b;
+    private KeyValue kvA;
+    private KeyValue kvB;
+
+    @Setup
+    public void setUp() throws IOException {
+        a = new byte[keyLength];
+        new Random(keyLength).nextBytes(a);
+        b = a.clone();
+        b[keyLength - 1] ^= 1;
+        kvA = KeyValue.wrap(KeyValue.createPut(a, Bytes.EMPTY_BYTES, 1L).serialize(), 0);
+        kvB = KeyValue.wrap(KeyValue.createPut(b, Bytes.EMPTY_BYTES, 1L).serialize(), 0);
+    }
+
+    private static int compareBytewise(byte[] a, byte[] b) {
+        int minLength = Math.min(a.length, b.length);
+        for (int i = 0; i < minLength; i++) {
+            int x = a[i] & 0xFF;
+            int y = b[i] & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    @Benchmark
+    public int bytewise() {
+        return compareBytewise(a, b);
+    }
+
+    @Benchmark
+    public int bytes() {
+        return Bytes.compare(a, b);
+    }
+
+    @Benchmark
+    public int keyValue() {
+        return kvA.compareTo(kvB);
+    }
+
+}
@@ -0,0 +1,157 @@
+package top.parak.minibase.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.MStore;
+import top.parak.minibase.MiniBase;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.storage.MemStore;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put throughput of concurrent writers, with a single mem table and with hash-sharded
+ * mem tables.
+ *
+ * <ul>
+ *     <li>{@code memStore}: the put path alone, a {@link MemStore} whose full tables are
+ *     dropped by a no-op flusher, without a write-ahead log</li>
+ *     <li>{@code store}: a whole {@link MStore} without a write-ahead log, which flushes
+ *     and compacts in the background, and throttles the writers when the flushes lag</li>
+ * </ul>
+ *
+ * <p>Run {@link #main(String[])} for the scaling from 1 to 64 writer threads, since the
+ * thread count of JMH can't be a parameter.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PutBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    @State(Scope.Benchmark)
+    public static class MemStoreState {
+
+        @Param({"1", "16"})
+        public int memTableShards;
+
+        private ExecutorService executor;
+        private MemStore        memStore;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            executor = Executors.newSingleThreadExecutor();
+            memStore = new MemStore(new Config().setMemTableShards(memTableShards), it -> {
+            }, executor);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            memStore.close();
+            executor.shutdown();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class StoreState {
+
+        @Param({"1", "16"})
+        public int memTableShards;
+
+        private File     dataDir;
+        private MiniBase db;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dataDir = Files.createTempDirectory("minibase-put").toFile();
+            db = MStore.create(new Config()
+                    .setDataDir(dataDir.getAbsolutePath())
+                    .setMemTableShards(memTableShards)
+                    .setWalEnabled(false)).open();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            db.close();
+            delete(dataDir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        final byte[] value = new byte[100];
+
+        byte[] nextKey() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return Bytes.toBytes(Bytes.toBytes(random.nextLong()), Bytes.toBytes(random.nextLong()));
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Benchmark
+    public void memStore(MemStoreState state, Writer writer) throws IOException {
+        byte[] key = writer.nextKey();
+        state.memStore.add(1, sequenceId -> Collections.singletonList(KeyValue.createPut(key, writer.value, sequenceId)));
+    }
+
+    @Benchmark
+    public void store(StoreState state, Writer writer) throws IOException {
+        state.db.put(writer.nextKey(), writer.value);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        StringBuilder summary = new StringBuilder(String.format("%-10s %-8s %-8s %16s%n",
+                "benchmark", "threads", "shards", "puts/s"));
+        for (int threads : THREADS) {
+            for (RunResult result : new Runner(new OptionsBuilder()
+                    .include(PutBenchmark.class.getName())
+                    .threads(threads)
+                    .build()).run()) {
+                String benchmark = result.getParams().getBenchmark();
+                summary.append(String.format("%-10s %-8d %-8s %16.0f%n", benchmark.substring(benchmark.lastIndexOf('.') + 1),
+                        threads, result.getParams().getParam("memTableShards"), result.getPrimaryResult().getScore()));
+            }
+        }
+        System.out.print(summary);
+    }
+
+}
@@ -1,14 +1,19 @@
 package top.parak.minibase;
 
+import java.io.Closeable;
 import java.io.IOException;
 
 /**
  * Iterator.
  *
+ * <p>An iterator over disk files holds them open until it's closed, so it must be closed
+ * once done with. The scans of {@link MiniBase} also close themselves once they run
+ * out of KeyValues, but not a page stopped by its limit.</p>
+ *
  * @author Khighness
  * @since 2023-08-03
  */
-public interface Iter<KV> {
+public interface Iter<KV> extends Closeable {
 
     /**
      * Returns {@code true} if the iteration has more elements.
@@ -28,4 +33,13 @@ public interface Iter<KV> {
      */
     KV next() throws IOException;
 
+    /**
+     * Release the resources held by the iterator, the iterator can't be used afterwards.
+     *
+     * @throws IOException if an IOException occurs
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
 }
@@ -0,0 +1,35 @@
+package top.parak.minibase;
+
+import top.parak.minibase.toolkit.Bytes;
+
+/**
+ * Key comparator.
+ *
+ * <p>Defines the order of the keys, for the mem tables, the disk files and the scans. It's
+ * not persisted, so a data dir must always be opened with the same comparator it was written
+ * with.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+@FunctionalInterface
+public interface KeyComparator {
+
+    /**
+     * Lexicographic order of unsigned bytes, the default.
+     */
+    KeyComparator BYTEWISE = Bytes::compare;
+
+    /**
+     * Compares two keys given as byte array regions.
+     *
+     * @return a negative integer, zero, or a positive integer as the first key
+     *         is less than, equal to, or greater than the second key.
+     */
+    int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength);
+
+    default int compare(byte[] a, byte[] b) {
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+}
@@ -4,7 +4,9 @@ import top.parak.minibase.toolkit.Bytes;
 import top.parak.minibase.toolkit.Requires;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Objects;
 
 /**
@@ -29,10 +31,25 @@ public class KeyValue implements Comparable<KeyValue> {
     public static final int OP_SIZE = 1;
     public static final int SEQ_ID_SIZE = 8;
 
-    private final byte[] key;
-    private final byte[] value;
+    /**
+     * The key and value are regions of these arrays, which are the encoded bytes of the
+     * KeyValue for a view created by {@link #wrap(byte[], int)}.
+     */
+    private final byte[] keyBuf;
+    private final int    keyOffset;
+    private final int    keyLength;
+    private final byte[] valueBuf;
+    private final int    valueOffset;
+    private final int    valueLength;
     private final Op     op;
     private final long   sequenceId;
+    private final boolean view;
+
+    /**
+     * The key and value copied out of a view on first access.
+     */
+    private volatile byte[] key;
+    private volatile byte[] value;
 
     private KeyValue(byte[] key, byte[] value, Op op, long sequenceId) {
         Requires.requireNotNull(key, "key cannot be null");
@@ -40,18 +57,46 @@ public class KeyValue implements Comparable<KeyValue> {
         Requires.requireNotNull(op, "op cannot be null");
         Requires.requireTrue(sequenceId > 0, "sequenceId should be positive");
 
-        this.key = key;
-        this.value = value;
+        this.keyBuf = this.key = key;
+        this.keyOffset = 0;
+        this.keyLength = key.length;
+        this.valueBuf = this.value = value;
+        this.valueOffset = 0;
+        this.valueLength = value.length;
+        this.op = op;
+        this.sequenceId = sequenceId;
+        this.view = false;
+    }
+
+    private KeyValue(byte[] bytes, int keyOffset, int keyLength, int valueOffset, int valueLength,
+                     Op op, long sequenceId) {
+        Requires.requireTrue(sequenceId > 0, "sequenceId should be positive");
+
+        this.keyBuf = bytes;
+        this.keyOffset = keyOffset;
+        this.keyLength = keyLength;
+        this.valueBuf = bytes;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
         this.op = op;
         this.sequenceId = sequenceId;
+        this.view = true;
     }
 
     public byte[] getKey() {
-        return key;
+        byte[] k = key;
+        if (k == null) {
+            key = k = Arrays.copyOfRange(keyBuf, keyOffset, keyOffset + keyLength);
+        }
+        return k;
     }
 
     public byte[] getValue() {
-        return value;
+        byte[] v = value;
+        if (v == null) {
+            value = v = Arrays.copyOfRange(valueBuf, valueOffset, valueOffset + valueLength);
+        }
+        return v;
     }
 
     public Op getOp() {
@@ -63,7 +108,7 @@ public class KeyValue implements Comparable<KeyValue> {
     }
 
     public int getRawKeyLenSize() {
-        return key.length + OP_SIZE + SEQ_ID_SIZE;
+        return keyLength + OP_SIZE + SEQ_ID_SIZE;
     }
 
     /**
@@ -72,7 +117,7 @@ public class KeyValue implements Comparable<KeyValue> {
      * @return the size of the serialized byte array
      */
     public int getSerializeSize() {
-        return RAW_KEY_LEN_SIZE + VAL_LEN_SIZE + getRawKeyLenSize() + value.length;
+        return RAW_KEY_LEN_SIZE + VAL_LEN_SIZE + getRawKeyLenSize() + valueLength;
     }
 
     /**
@@ -91,13 +136,13 @@ public class KeyValue implements Comparable<KeyValue> {
         pos += RAW_KEY_LEN_SIZE;
 
         // Encode value length
-        byte[] valLenBytes = Bytes.toBytes(value.length);
+        byte[] valLenBytes = Bytes.toBytes(valueLength);
         System.arraycopy(valLenBytes, 0, bytes, pos, VAL_LEN_SIZE);
         pos += VAL_LEN_SIZE;
 
         // Encode key
-        System.arraycopy(key, 0, bytes, pos, key.length);
-        pos += key.length;
+        System.arraycopy(keyBuf, keyOffset, bytes, pos, keyLength);
+        pos += keyLength;
 
         // Encode op
         bytes[pos] = op.getCode();
@@ -109,11 +154,64 @@ public class KeyValue implements Comparable<KeyValue> {
         pos += seqIdBytes.length;
 
         // Encode value
-        System.arraycopy(value, 0, bytes, pos, value.length);
+        System.arraycopy(valueBuf, valueOffset, bytes, pos, valueLength);
 
         return bytes;
     }
 
+    /**
+     * Compares the key of this KeyValue with the key of the specified KeyValue,
+     * without copying the key out of a view.
+     *
+     * @param that the KeyValue to be compared.
+     * @return a negative integer, zero, or a positive integer as the key of this
+     *         KeyValue is less than, equal to, or greater than the other key.
+     */
+    public int compareKey(KeyValue that) {
+        return compareKey(that, KeyComparator.BYTEWISE);
+    }
+
+    /**
+     * Compares the key of this KeyValue with the key of the specified KeyValue in the
+     * order of the specified comparator, without copying the keys out of views.
+     *
+     * @param that       the KeyValue to be compared.
+     * @param comparator the key comparator
+     * @return a negative integer, zero, or a positive integer as the key of this
+     *         KeyValue is less than, equal to, or greater than the other key.
+     */
+    public int compareKey(KeyValue that, KeyComparator comparator) {
+        return comparator.compare(this.keyBuf, this.keyOffset, this.keyLength, that.keyBuf, that.keyOffset, that.keyLength);
+    }
+
+    /**
+     * Compares the key of this KeyValue with the specified key, without copying
+     * the key out of a view.
+     *
+     * @param key the key to be compared.
+     * @return a negative integer, zero, or a positive integer as the key of this
+     *         KeyValue is less than, equal to, or greater than the specified key.
+     */
+    public int compareKey(byte[] key) {
+        return compareKey(key, KeyComparator.BYTEWISE);
+    }
+
+    public int compareKey(byte[] key, KeyComparator comparator) {
+        return comparator.compare(keyBuf, keyOffset, keyLength, key, 0, key.length);
+    }
+
+    /**
+     * Check whether the key of this KeyValue starts with the specified prefix, without
+     * copying the key out of a view.
+     *
+     * @param prefix the prefix
+     * @return true if the key starts with the prefix
+     */
+    public boolean keyStartsWith(byte[] prefix) {
+        return keyLength >= prefix.length
+                && Bytes.compare(keyBuf, keyOffset, prefix.length, prefix, 0, prefix.length) == 0;
+    }
+
     /**
      * Compares this KeyValue with the specified KeyValue for order.
      *
@@ -130,9 +228,23 @@ public class KeyValue implements Comparable<KeyValue> {
      */
     @Override
     public int compareTo(KeyValue that) {
+        return compareTo(that, KeyComparator.BYTEWISE);
+    }
+
+    /**
+     * Compares this KeyValue with the specified KeyValue for order, with the keys
+     * ordered by the specified comparator. The keys are compared in place with a single
+     * pass, and the versions are only compared once the keys are equal.
+     *
+     * @param that       the KeyValue to be compared.
+     * @param comparator the key comparator
+     * @return a negative integer, zero, or a positive integer as this KeyValue
+     *         is less than, equal to, or greater than the specified KeyValue.
+     */
+    public int compareTo(KeyValue that, KeyComparator comparator) {
         Requires.requireNotNull(that, "that can not be null");
 
-        int ret = Bytes.compare(this.key, that.key);
+        int ret = compareKey(that, comparator);
         if (ret != 0) {
             return ret;
         }
@@ -156,11 +268,21 @@ public class KeyValue implements Comparable<KeyValue> {
     @Override
     public int hashCode() {
         int result = Objects.hash(op, sequenceId);
-        result = 31 * result + Arrays.hashCode(key);
-        result = 31 * result + Arrays.hashCode(value);
+        result = 31 * result + Arrays.hashCode(getKey());
+        result = 31 * result + Arrays.hashCode(getValue());
         return result;
     }
 
+    /**
+     * Get the KeyValue order whose keys are ordered by the specified comparator.
+     *
+     * @param comparator the key comparator
+     * @return the KeyValue comparator
+     */
+    public static Comparator<KeyValue> comparator(KeyComparator comparator) {
+        return (a, b) -> a.compareTo(b, comparator);
+    }
+
     /**
      * Create a KeyValue instance.
      *
@@ -217,20 +339,43 @@ public class KeyValue implements Comparable<KeyValue> {
      * @throws IOException if the specified byte array is invalid
      */
     public static KeyValue deserialize(byte[] bytes, int offset) throws IOException {
+        return wrap(bytes, offset).detach();
+    }
+
+    /**
+     * Create a KeyValue as a view over the encoded bytes at the specified offset into the
+     * specified byte array, the key and value are only copied out once they're accessed.
+     * The byte array must not be modified afterwards.
+     *
+     * @param bytes  the specified byte array holding the encoded KeyValue
+     * @param offset the specified offset of the array byte
+     * @return a KeyValue view
+     * @throws IOException if the specified byte array is invalid
+     */
+    public static KeyValue wrap(byte[] bytes, int offset) throws IOException {
         Requires.requireNotNull(bytes, "bytes if null");
 
-        // Decode raw key length
         int pos = offset;
-        int rawKeyLen = Bytes.toInt(Bytes.slice(bytes, pos, RAW_KEY_LEN_SIZE));
+        if (pos < 0 || pos + RAW_KEY_LEN_SIZE + VAL_LEN_SIZE > bytes.length) {
+            throw new IOException("Buffer overflow, offset: " + offset + ", buf.length: " + bytes.length);
+        }
+
+        // Decode raw key length
+        int rawKeyLen = Bytes.toInt(bytes, pos);
         pos += RAW_KEY_LEN_SIZE;
 
         // Decode value length
-        int valLen = Bytes.toInt(Bytes.slice(bytes, pos, VAL_LEN_SIZE));
+        int valLen = Bytes.toInt(bytes, pos);
         pos += VAL_LEN_SIZE;
 
-        // Decode key
         int keyLen = rawKeyLen - OP_SIZE - SEQ_ID_SIZE;
-        byte[] key = Bytes.slice(bytes, pos, keyLen);
+        if (keyLen < 0 || valLen < 0 || (long) pos + rawKeyLen + valLen > bytes.length) {
+            throw new IOException("Buffer overflow, offset: " + offset + ", raw key len: " + rawKeyLen
+                    + ", val len: " + valLen + ", buf.length: " + bytes.length);
+        }
+
+        // Decode key
+        int keyOffset = pos;
         pos += keyLen;
 
         // Decode op
@@ -238,11 +383,64 @@ public class KeyValue implements Comparable<KeyValue> {
         pos++;
 
         // Decode sequenceId
-        long sequenceId = Bytes.toLong(Bytes.slice(bytes, pos, SEQ_ID_SIZE));
+        long sequenceId = Bytes.toLong(bytes, pos);
         pos += SEQ_ID_SIZE;
 
         // Decode value
-        byte[] val = Bytes.slice(bytes, pos, valLen);
+        return new KeyValue(bytes, keyOffset, keyLen, pos, valLen, op, sequenceId);
+    }
+
+    /**
+     * Get a KeyValue owning its key and value, so that it doesn't keep the encoded bytes
+     * of a view reachable.
+     *
+     * @return this KeyValue if it's not a view, or a copy otherwise
+     */
+    public KeyValue detach() {
+        return view ? create(getKey(), getValue(), op, sequenceId) : this;
+    }
+
+    /**
+     * Get a KeyValue owning its key with an empty value, so that the value of a view is
+     * never copied.
+     *
+     * @return the KeyValue without the value
+     */
+    public KeyValue detachKey() {
+        return create(getKey(), Bytes.EMPTY_BYTES, op, sequenceId);
+    }
+
+    /**
+     * Deserialize a KeyValue instance from the specified offset into the specified buffer,
+     * without changing the position of the buffer.
+     *
+     * @param buf    the specified buffer to be deserialized
+     * @param offset the specified absolute offset in the buffer
+     * @return a KeyValue instance
+     * @throws IOException if the specified buffer is invalid
+     */
+    public static KeyValue deserialize(ByteBuffer buf, int offset) throws IOException {
+        Requires.requireNotNull(buf, "buf is null");
+
+        int pos = offset;
+        int rawKeyLen = buf.getInt(pos);
+        pos += RAW_KEY_LEN_SIZE;
+        int valLen = buf.getInt(pos);
+        pos += VAL_LEN_SIZE;
+        int keyLen = rawKeyLen - OP_SIZE - SEQ_ID_SIZE;
+        if (keyLen < 0 || valLen < 0 || pos + rawKeyLen + valLen > buf.limit()) {
+            throw new IOException("Buffer overflow, offset: " + offset + ", raw key len: " + rawKeyLen
+                    + ", val len: " + valLen + ", buf.limit: " + buf.limit());
+        }
+
+        ByteBuffer dup = buf.duplicate();
+        dup.position(pos);
+        byte[] key = new byte[keyLen];
+        dup.get(key);
+        Op op = Op.getByCode(dup.get());
+        long sequenceId = dup.getLong();
+        byte[] val = new byte[valLen];
+        dup.get(val);
         return create(key, val, op, sequenceId);
     }
 
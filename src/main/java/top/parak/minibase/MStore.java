@@ -1,6 +1,9 @@
 package top.parak.minibase;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import top.parak.minibase.config.Config;
+import top.parak.minibase.storage.BlockCache;
 import top.parak.minibase.storage.Compactor;
 import top.parak.minibase.storage.DiskStoreCompactor;
 import top.parak.minibase.storage.DiskStoreFlusher;
@@ -8,11 +11,16 @@ import top.parak.minibase.storage.DiskStore;
 import top.parak.minibase.storage.DiskStore.MultiIter;
 import top.parak.minibase.storage.MemStore;
 import top.parak.minibase.storage.SeekIter;
+import top.parak.minibase.storage.SnapshotRegistry;
+import top.parak.minibase.storage.TtlCompactionFilter;
+import top.parak.minibase.storage.WriteAheadLog;
 import top.parak.minibase.toolkit.Bytes;
 import top.parak.minibase.toolkit.Requires;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
@@ -30,13 +38,29 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class MStore implements MiniBase {
 
+    private static final Logger LOG = LoggerFactory.getLogger(MStore.class);
+
     private ExecutorService executorService;
     private DiskStore diskStore;
     private MemStore memStore;
+    private WriteAheadLog wal;
     private Compactor compactor;
+    private SnapshotRegistry snapshots;
     private AtomicLong      sequenceId;
     private Config          config;
 
+    /**
+     * Tells the expired values apart when the values have a time to live, or {@code null}.
+     */
+    private TtlCompactionFilter ttlFilter;
+
+    /**
+     * The largest sequence id whose write and all earlier writes have completed,
+     * readers only see KeyValues whose sequence id is not greater than it.
+     */
+    private volatile long readPoint;
+    private final Object  readPointLock = new Object();
+
     public static MStore create(Config config) {
         Requires.requireNotNull(config, "");
         return new MStore(config);
@@ -51,6 +75,13 @@ public class MStore implements MiniBase {
     }
 
     public MiniBase open() throws IOException {
+        // The keys starting with a prefix are only contiguous in the bytewise order.
+        Requires.requireTrue(config.getPrefixExtractor() == null || config.getKeyComparator() == KeyComparator.BYTEWISE,
+                "prefix extractor requires the bytewise key comparator");
+        TtlCompactionFilter.checkValueFormat(config.getDataDir(), config.getTtlMs() > 0);
+        if (config.getTtlMs() > 0) {
+            this.ttlFilter = new TtlCompactionFilter(config.getTtlMs());
+        }
         AtomicInteger threadCounter = new AtomicInteger(0);
         ThreadFactory threadFactory = r -> {
             Thread t = new Thread(r);
@@ -65,77 +96,472 @@ public class MStore implements MiniBase {
                 threadFactory
         );
 
-        this.diskStore = new DiskStore(config.getDataDir(), config.getMaxDiskFiles());
+        BlockCache blockCache = null;
+        if (config.getBlockCacheCapacity() > 0) {
+            blockCache = new BlockCache(config.getBlockCacheCapacity(), config.getBlockCacheShards());
+        }
+        this.diskStore = new DiskStore(config, blockCache);
         this.diskStore.open();
-        this.memStore = new MemStore(config, new DiskStoreFlusher(diskStore), executorService);
-        this.sequenceId = new AtomicLong(0);
-        this.compactor = new DiskStoreCompactor(diskStore);
+        // The write-ahead logs of the flushed data are gone, so start from the disk files.
+        this.sequenceId = new AtomicLong(diskStore.getMaxSequenceId());
+        this.readPoint = sequenceId.get();
+        if (config.isWalEnabled()) {
+            this.wal = new WriteAheadLog(config);
+            this.wal.open();
+        }
+        MemStore.SequenceIdAllocator sequenceIds = new MemStore.SequenceIdAllocator() {
+            @Override
+            public long allocate(int count) {
+                return sequenceId.addAndGet(count);
+            }
+
+            @Override
+            public void complete(long firstSequenceId, long lastSequenceId) {
+                completeWrite(firstSequenceId, lastSequenceId);
+            }
+        };
+        this.memStore = new MemStore(config, new DiskStoreFlusher(diskStore), executorService, wal, sequenceIds);
+        if (wal != null) {
+            replayWal();
+        }
+        this.snapshots = new SnapshotRegistry(() -> readPoint);
+        this.compactor = new DiskStoreCompactor(config, diskStore, snapshots);
         this.compactor.start();
         return this;
     }
 
+    private void replayWal() throws IOException {
+        long replayed = 0;
+        for (Iter<KeyValue> it = wal.replay(); it.hasNext(); replayed++) {
+            KeyValue kv = it.next();
+            memStore.replay(kv);
+            if (kv.getSequenceId() > sequenceId.get()) {
+                sequenceId.set(kv.getSequenceId());
+            }
+        }
+        memStore.finishReplay();
+        readPoint = sequenceId.get();
+        LOG.info("Replay write-ahead log, {} KeyValues recovered, sequenceId: {}", replayed, sequenceId.get());
+    }
+
+    /**
+     * Advance the read point to {@code lastSequenceId} once all the writes before
+     * {@code firstSequenceId} have advanced it, so that writes become visible in order.
+     */
+    private void completeWrite(long firstSequenceId, long lastSequenceId) {
+        boolean interrupted = false;
+        synchronized (readPointLock) {
+            while (readPoint != firstSequenceId - 1) {
+                try {
+                    readPointLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            readPoint = lastSequenceId;
+            readPointLock.notifyAll();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public void put(byte[] key, byte[] value) throws IOException {
-        this.memStore.add(KeyValue.createPut(key, value, sequenceId.incrementAndGet()));
+        this.memStore.add(1, seqId -> Collections.singletonList(KeyValue.createPut(key, withWriteTime(value), seqId)));
     }
 
     @Override
     public KeyValue get(byte[] key) throws IOException {
-        KeyValue result = null;
-        Iter<KeyValue> it = scan(key, Bytes.EMPTY_BYTES);
-        if (it.hasNext()) {
-            KeyValue kv = it.next();
-            if (Bytes.compare(kv.getKey(), key) == 0) {
-                result = kv;
+        return get(key, new ReadOptions());
+    }
+
+    @Override
+    public KeyValue get(byte[] key, ReadOptions options) throws IOException {
+        Requires.requireNotNull(key, "key cannot be null");
+        try (ReadPointPin pin = pinReadPoint(options)) {
+            long readSequenceId = pin.sequenceId;
+            if (readSequenceId <= 0) {
+                // Nothing has been written yet.
+                return null;
+            }
+            KeyValue kv = memStore.get(key, readSequenceId);
+            if (kv == null) {
+                kv = diskStore.get(key, readSequenceId);
             }
+            return toResult(kv, System.currentTimeMillis());
         }
-        return result;
+    }
+
+    private byte[] withWriteTime(byte[] value) {
+        if (ttlFilter == null || value == null) {
+            return value;
+        }
+        return TtlCompactionFilter.appendWriteTime(value, System.currentTimeMillis());
+    }
+
+    /**
+     * Turn the newest visible version of a key into the result of a read.
+     *
+     * @return the detached KeyValue, or {@code null} if the key is deleted or expired
+     */
+    private KeyValue toResult(KeyValue kv, long now) {
+        if (kv == null || kv.getOp() != Op.Put || (ttlFilter != null && ttlFilter.isExpired(kv, now))) {
+            return null;
+        }
+        return detach(kv, false, ttlFilter);
+    }
+
+    static KeyValue detach(KeyValue kv, boolean keysOnly, TtlCompactionFilter ttlFilter) {
+        if (keysOnly) {
+            return kv.detachKey();
+        }
+        return ttlFilter == null ? kv.detach() : TtlCompactionFilter.stripWriteTime(kv);
     }
 
     @Override
     public void delete(byte[] key) throws IOException {
-        this.memStore.add(KeyValue.createDelete(key, sequenceId.incrementAndGet()));
+        this.memStore.add(1, seqId -> Collections.singletonList(KeyValue.createDelete(key, seqId)));
+    }
+
+    @Override
+    public void write(WriteBatch batch) throws IOException {
+        Requires.requireNotNull(batch, "batch cannot be null");
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<WriteBatch.Mutation> mutations = batch.getMutations();
+        this.memStore.add(mutations.size(), firstSeqId -> {
+            List<KeyValue> kvs = new ArrayList<>(mutations.size());
+            long seqId = firstSeqId;
+            for (WriteBatch.Mutation mutation : mutations) {
+                byte[] value = mutation.op == Op.Put ? withWriteTime(mutation.value) : mutation.value;
+                kvs.add(KeyValue.create(mutation.key, value, mutation.op, seqId++));
+            }
+            return kvs;
+        });
+    }
+
+    @Override
+    public List<KeyValue> multiGet(List<byte[]> keys) throws IOException {
+        return multiGet(keys, new ReadOptions());
+    }
+
+    @Override
+    public List<KeyValue> multiGet(List<byte[]> keys, ReadOptions options) throws IOException {
+        Requires.requireNotNull(keys, "keys cannot be null");
+        KeyValue[] result = new KeyValue[keys.size()];
+        try (ReadPointPin pin = pinReadPoint(options)) {
+            long readSequenceId = pin.sequenceId;
+            if (readSequenceId > 0) {
+                List<Integer> diskIndexes = new ArrayList<>();
+                for (int i = 0; i < keys.size(); i++) {
+                    Requires.requireNotNull(keys.get(i), "key cannot be null");
+                    result[i] = memStore.get(keys.get(i), readSequenceId);
+                    if (result[i] == null) {
+                        diskIndexes.add(i);
+                    }
+                }
+                if (!diskIndexes.isEmpty()) {
+                    byte[][] diskKeys = new byte[diskIndexes.size()][];
+                    for (int i = 0; i < diskKeys.length; i++) {
+                        diskKeys[i] = keys.get(diskIndexes.get(i));
+                    }
+                    KeyValue[] diskResult = diskStore.multiGet(diskKeys, readSequenceId);
+                    for (int i = 0; i < diskKeys.length; i++) {
+                        result[diskIndexes.get(i)] = diskResult[i];
+                    }
+                }
+            }
+        }
+        List<KeyValue> kvs = new ArrayList<>(result.length);
+        long now = System.currentTimeMillis();
+        for (KeyValue kv : result) {
+            kvs.add(toResult(kv, now));
+        }
+        return kvs;
     }
 
     @Override
     public Iter<KeyValue> scan(byte[] startKey, byte[] endKey) throws IOException {
-        List<SeekIter<KeyValue>> iterList = new ArrayList<>();
-        iterList.add(memStore.createIterator());
-        iterList.add(diskStore.createIterator());
-        MultiIter it = new MultiIter(iterList);
+        return scan(startKey, endKey, new ScanOptions());
+    }
+
+    @Override
+    public Iter<KeyValue> scan(byte[] startKey, byte[] endKey, ReadOptions options) throws IOException {
+        return scan(startKey, endKey, toScanOptions(options));
+    }
+
+    @Override
+    public ResumableIter<KeyValue> scan(byte[] startKey, byte[] endKey, ScanOptions options) throws IOException {
+        ReadPointPin pin = pinReadPoint(options);
+        try {
+            byte[] resumeKey = ScanOptions.decodeResumeToken(options.getResumeToken());
+            byte[] seekKey = resumeKey == null ? startKey : resumeKey;
+            MultiIter it = mergeWithMemStore(() -> diskStore.createIterator(seekKey, endKey));
+            try {
+                if (Bytes.compare(seekKey, Bytes.EMPTY_BYTES) != 0) {
+                    it.seekTo(KeyValue.createDelete(seekKey, Long.MAX_VALUE));
+                }
+            } catch (IOException | RuntimeException e) {
+                it.close();
+                throw e;
+            }
+
+            KeyValue stopKV = null;
+            if (Bytes.compare(endKey, Bytes.EMPTY_BYTES) != 0) {
+                stopKV = KeyValue.createDelete(endKey, Long.MAX_VALUE);
+            }
+            ScanIter scanIter = new ScanIter(stopKV, null, pin, it, config.getKeyComparator());
+            scanIter.setKeysOnly(options.isKeysOnly());
+            scanIter.setTtlFilter(ttlFilter);
+            if (resumeKey != null) {
+                scanIter.skipKey(resumeKey);
+            }
+            return new PageIter(scanIter, options.getLimit(), resumeKey);
+        } catch (IOException | RuntimeException e) {
+            pin.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Iter<KeyValue> reverseScan(byte[] startKey, byte[] endKey) throws IOException {
+        return reverseScan(startKey, endKey, new ScanOptions());
+    }
+
+    @Override
+    public Iter<KeyValue> reverseScan(byte[] startKey, byte[] endKey, ReadOptions options) throws IOException {
+        return reverseScan(startKey, endKey, toScanOptions(options));
+    }
+
+    @Override
+    public ResumableIter<KeyValue> reverseScan(byte[] startKey, byte[] endKey, ScanOptions options) throws IOException {
+        ReadPointPin pin = pinReadPoint(options);
+        try {
+            byte[] resumeKey = ScanOptions.decodeResumeToken(options.getResumeToken());
+            MultiIter it = mergeWithMemStore(() -> diskStore.createIterator(startKey, resumeKey == null ? endKey : resumeKey));
+            try {
+                // Seeking before the resume key skips all its versions.
+                if (resumeKey != null) {
+                    it.seekForPrev(KeyValue.createDelete(resumeKey, Long.MAX_VALUE));
+                } else if (Bytes.compare(endKey, Bytes.EMPTY_BYTES) != 0) {
+                    it.seekForPrev(KeyValue.createDelete(endKey, Long.MAX_VALUE));
+                } else {
+                    it.seekToLast();
+                }
+            } catch (IOException | RuntimeException e) {
+                it.close();
+                throw e;
+            }
+
+            KeyValue stopKV = null;
+            if (Bytes.compare(startKey, Bytes.EMPTY_BYTES) != 0) {
+                stopKV = KeyValue.createDelete(startKey, Long.MAX_VALUE);
+            }
+            ReverseScanIter scanIter = new ReverseScanIter(stopKV, pin, it, config.getKeyComparator());
+            scanIter.setKeysOnly(options.isKeysOnly());
+            scanIter.setTtlFilter(ttlFilter);
+            return new PageIter(scanIter, options.getLimit(), resumeKey);
+        } catch (IOException | RuntimeException e) {
+            pin.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an iterator over the disk store.
+     */
+    @FunctionalInterface
+    private interface DiskIterFactory {
+        SeekIter<KeyValue> create() throws IOException;
+    }
+
+    /**
+     * Merge the mem store with an iterator over the disk store. The mem store is taken first,
+     * so that a flush finishing in between leaves its KeyValues in both rather than in neither.
+     */
+    private MultiIter mergeWithMemStore(DiskIterFactory diskIterFactory) throws IOException {
+        SeekIter<KeyValue> memIt = memStore.createIterator();
+        SeekIter<KeyValue> diskIt = null;
+        try {
+            diskIt = diskIterFactory.create();
+            List<SeekIter<KeyValue>> iterList = new ArrayList<>();
+            iterList.add(memIt);
+            iterList.add(diskIt);
+            return new MultiIter(iterList, config.getKeyComparator());
+        } catch (IOException | RuntimeException e) {
+            memIt.close();
+            if (diskIt != null) {
+                diskIt.close();
+            }
+            throw e;
+        }
+    }
+
+    private static ScanOptions toScanOptions(ReadOptions options) {
+        Requires.requireNotNull(options, "options cannot be null");
+        if (options instanceof ScanOptions) {
+            return (ScanOptions) options;
+        }
+        return new ScanOptions().setSnapshot(options.getSnapshot());
+    }
+
+    @Override
+    public Iter<KeyValue> prefixScan(byte[] prefix) throws IOException {
+        return prefixScan(prefix, new ReadOptions());
+    }
+
+    @Override
+    public Iter<KeyValue> prefixScan(byte[] prefix, ReadOptions options) throws IOException {
+        Requires.requireNotNull(prefix, "prefix cannot be null");
+        Requires.requireTrue(config.getKeyComparator() == KeyComparator.BYTEWISE,
+                "prefix scan requires the bytewise key comparator");
+        ReadPointPin pin = pinReadPoint(options);
+        try {
+            MultiIter it = mergeWithMemStore(() -> diskStore.createPrefixIterator(prefix));
+            try {
+                // The disk iterators only skip blocks once sought.
+                it.seekTo(KeyValue.createDelete(prefix, Long.MAX_VALUE));
+            } catch (IOException | RuntimeException e) {
+                it.close();
+                throw e;
+            }
+            ScanIter scanIter = new ScanIter(null, prefix, pin, it, config.getKeyComparator());
+            scanIter.setTtlFilter(ttlFilter);
+            return scanIter;
+        } catch (IOException | RuntimeException e) {
+            pin.close();
+            throw e;
+        }
+    }
 
-        if (Bytes.compare(startKey, Bytes.EMPTY_BYTES) != 0) {
-            it.seekTo(KeyValue.createDelete(startKey, sequenceId.get()));
+    /**
+     * Resolve the read point of a read and pin it until the read is done, so that no
+     * compaction drops the versions the read sees in the meantime.
+     */
+    private ReadPointPin pinReadPoint(ReadOptions options) {
+        Requires.requireNotNull(options, "options cannot be null");
+        Snapshot snapshot = options.getSnapshot();
+        if (snapshot == null) {
+            // Pin under the read point lock, like getSnapshot().
+            synchronized (readPointLock) {
+                return new ReadPointPin(snapshots, readPoint);
+            }
+        }
+        // Pin the snapshot as well, so that releasing it in the middle of the read is harmless.
+        synchronized (snapshot) {
+            Requires.requireTrue(!snapshot.isReleased(), "snapshot has been released");
+            return new ReadPointPin(snapshots, snapshot.getSequenceId());
         }
+    }
+
+    /**
+     * A read point pinned in the snapshot registry, released once by {@link #close()}.
+     */
+    static final class ReadPointPin implements Closeable {
+        private final SnapshotRegistry snapshots;
+        private final long             sequenceId;
+        private boolean                released = false;
 
-        KeyValue stopKV = null;
-        if (Bytes.compare(endKey, Bytes.EMPTY_BYTES) != 0) {
-            stopKV = KeyValue.createDelete(endKey, Long.MAX_VALUE);
+        ReadPointPin(SnapshotRegistry snapshots, long sequenceId) {
+            this.snapshots = snapshots;
+            this.sequenceId = sequenceId;
+            snapshots.acquire(sequenceId);
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                snapshots.release(sequenceId);
+            }
+        }
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        // Pin under the read point lock, so that compaction never sees the read point move past it unpinned.
+        synchronized (readPointLock) {
+            long seqId = readPoint;
+            snapshots.acquire(seqId);
+            return new Snapshot(seqId);
+        }
+    }
+
+    @Override
+    public void releaseSnapshot(Snapshot snapshot) {
+        Requires.requireNotNull(snapshot, "snapshot cannot be null");
+        synchronized (snapshot) {
+            if (!snapshot.isReleased()) {
+                snapshot.markReleased();
+                snapshots.release(snapshot.getSequenceId());
+            }
         }
-        return new ScanIter(stopKV, it);
     }
 
     @Override
     public void close() throws IOException {
         memStore.close();
+        if (wal != null) {
+            wal.close();
+        }
         diskStore.close();
         compactor.interrupt();
+        executorService.shutdown();
     }
 
     static class ScanIter implements Iter<KeyValue> {
         private KeyValue stopKV;
+        private byte[]   prefix;
+        private long     readPoint;
+        private ReadPointPin   pin;
         private Iter<KeyValue> storeIt;
+        private KeyComparator  comparator;
         private KeyValue lastKV    = null;
         private KeyValue pendingKV = null;
+        private boolean  keysOnly  = false;
+        private boolean  closed    = false;
+        private TtlCompactionFilter ttlFilter;
+        private long                now;
 
-        public ScanIter(KeyValue stopKV, SeekIter<KeyValue> it) {
+        public ScanIter(KeyValue stopKV, byte[] prefix, ReadPointPin pin, SeekIter<KeyValue> it, KeyComparator comparator) {
             this.stopKV = stopKV;
+            this.prefix = prefix;
+            this.readPoint = pin.sequenceId;
+            this.pin = pin;
             this.storeIt = it;
+            this.comparator = comparator;
+        }
+
+        void setKeysOnly(boolean keysOnly) {
+            this.keysOnly = keysOnly;
+        }
+
+        /**
+         * Hide the values expired by the time the scan starts.
+         */
+        void setTtlFilter(TtlCompactionFilter ttlFilter) {
+            this.ttlFilter = ttlFilter;
+            this.now = System.currentTimeMillis();
+        }
+
+        private boolean isExpired(KeyValue kv) {
+            return ttlFilter != null && ttlFilter.isExpired(kv, now);
+        }
+
+        /**
+         * Skip all the versions of the specified key, which must be ordered before the
+         * first KeyValue of the store iterator, or be its key.
+         */
+        void skipKey(byte[] key) {
+            lastKV = KeyValue.createDelete(key, Long.MAX_VALUE);
         }
 
         @Override
         public boolean hasNext() throws IOException {
-            if (pendingKV == null) {
+            if (pendingKV == null && !closed) {
                 switchToNextKey();
             }
             return pendingKV != null;
@@ -143,34 +569,58 @@ public class MStore implements MiniBase {
 
         @Override
         public KeyValue next() throws IOException {
-            if (pendingKV == null) {
+            if (pendingKV == null && !closed) {
                 switchToNextKey();
             }
             lastKV = pendingKV;
             pendingKV = null;
-            return lastKV;
+            if (lastKV == null) {
+                return null;
+            }
+            return detach(lastKV, keysOnly, ttlFilter);
         }
 
         private boolean shouldStop(KeyValue kv) {
-            return stopKV != null && Bytes.compare(stopKV.getKey(), kv.getKey()) <= 0;
+            return (stopKV != null && stopKV.compareKey(kv, comparator) <= 0)
+                    || (prefix != null && !kv.keyStartsWith(prefix));
         }
 
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    storeIt.close();
+                } finally {
+                    pin.close();
+                }
+            }
+        }
+
+        /**
+         * Find the next visible KeyValue as the pending one, or close the scan if there's none.
+         */
         private void switchToNextKey() throws IOException {
             if (lastKV != null && shouldStop(lastKV)) {
+                close();
                 return;
             }
             KeyValue currKV;
             while (storeIt.hasNext()) {
                 currKV = storeIt.next();
                 if (shouldStop(currKV)) {
+                    close();
                     return;
                 }
-                if (currKV.getOp() == Op.Put) {
+                if (currKV.getSequenceId() > readPoint) {
+                    continue;
+                }
+                if (currKV.getOp() == Op.Put && !isExpired(currKV)) {
                     if (lastKV == null) {
                         lastKV = pendingKV = currKV;
                         return;
                     }
-                    int ret = Bytes.compare(lastKV.getKey(), currKV.getKey());
+                    int ret = lastKV.compareKey(currKV, comparator);
                     if (ret < 0) {
                         lastKV = pendingKV = currKV;
                         return;
@@ -178,15 +628,163 @@ public class MStore implements MiniBase {
                         throw new IOException("KV mis-encoded, currKV < lastKV, currKV: " + Bytes.toHex(currKV.getKey())
                                 + ", lastKV: " + Bytes.toHex(lastKV.getKey()));
                     }
-                } else if (currKV.getOp() == Op.Delete) {
-                    if (lastKV == null || Bytes.compare(lastKV.getKey(), currKV.getKey()) != 0) {
+                } else if (currKV.getOp() == Op.Put || currKV.getOp() == Op.Delete) {
+                    // An expired put hides the older versions of its key like a delete.
+                    if (lastKV == null || lastKV.compareKey(currKV, comparator) != 0) {
                         lastKV = currKV;
                     }
                 } else {
                     throw new IllegalStateException("Unknown op code: " + currKV.getOp());
                 }
             }
+            close();
         }
     }
 
+    /**
+     * Backward counterpart of {@link ScanIter}. The versions of a key come from the oldest to
+     * the newest backwards, so all of them are read before the key is settled by its newest
+     * visible version.
+     */
+    static class ReverseScanIter implements Iter<KeyValue> {
+        private KeyValue stopKV;
+        private long     readPoint;
+        private ReadPointPin       pin;
+        private SeekIter<KeyValue> storeIt;
+        private KeyComparator      comparator;
+        private KeyValue peekKV    = null;
+        private KeyValue pendingKV = null;
+        private boolean  keysOnly  = false;
+        private boolean  closed    = false;
+        private TtlCompactionFilter ttlFilter;
+        private long                now;
+
+        public ReverseScanIter(KeyValue stopKV, ReadPointPin pin, SeekIter<KeyValue> it, KeyComparator comparator) {
+            this.stopKV = stopKV;
+            this.readPoint = pin.sequenceId;
+            this.pin = pin;
+            this.storeIt = it;
+            this.comparator = comparator;
+        }
+
+        void setKeysOnly(boolean keysOnly) {
+            this.keysOnly = keysOnly;
+        }
+
+        void setTtlFilter(TtlCompactionFilter ttlFilter) {
+            this.ttlFilter = ttlFilter;
+            this.now = System.currentTimeMillis();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (pendingKV == null && !closed) {
+                switchToPrevKey();
+            }
+            return pendingKV != null;
+        }
+
+        @Override
+        public KeyValue next() throws IOException {
+            if (pendingKV == null && !closed) {
+                switchToPrevKey();
+            }
+            KeyValue kv = pendingKV;
+            pendingKV = null;
+            return kv;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    storeIt.close();
+                } finally {
+                    pin.close();
+                }
+            }
+        }
+
+        private boolean shouldStop(KeyValue kv) {
+            return stopKV != null && stopKV.compareKey(kv, comparator) > 0;
+        }
+
+        private KeyValue prevKV() throws IOException {
+            return storeIt.hasPrev() ? storeIt.prev() : null;
+        }
+
+        private void switchToPrevKey() throws IOException {
+            if (peekKV == null) {
+                peekKV = prevKV();
+            }
+            while (peekKV != null && !shouldStop(peekKV)) {
+                KeyValue newestKV = null;
+                KeyValue currKV = peekKV;
+                do {
+                    if (currKV.getSequenceId() <= readPoint) {
+                        newestKV = currKV;
+                    }
+                    currKV = prevKV();
+                } while (currKV != null && currKV.compareKey(peekKV, comparator) == 0);
+                peekKV = currKV;
+
+                if (newestKV == null || newestKV.getOp() == Op.Delete
+                        || (ttlFilter != null && ttlFilter.isExpired(newestKV, now))) {
+                    continue;
+                }
+                if (newestKV.getOp() != Op.Put) {
+                    throw new IllegalStateException("Unknown op code: " + newestKV.getOp());
+                }
+                pendingKV = detach(newestKV, keysOnly, ttlFilter);
+                return;
+            }
+            close();
+        }
+    }
+
+
+    /**
+     * Page of a scan, which stops reading the store once the limit is reached.
+     */
+    static class PageIter implements ResumableIter<KeyValue> {
+        private final Iter<KeyValue> scanIt;
+        private final int            limit;
+        private int                  count = 0;
+        private byte[]               lastKey;
+
+        PageIter(Iter<KeyValue> scanIt, int limit, byte[] resumeKey) {
+            this.scanIt = scanIt;
+            this.limit = limit;
+            this.lastKey = resumeKey;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return count < limit && scanIt.hasNext();
+        }
+
+        @Override
+        public KeyValue next() throws IOException {
+            if (!hasNext()) {
+                return null;
+            }
+            KeyValue kv = scanIt.next();
+            count++;
+            lastKey = kv.getKey();
+            return kv;
+        }
+
+        @Override
+        public byte[] getResumeToken() throws IOException {
+            return scanIt.hasNext() ? ScanOptions.encodeResumeToken(lastKey) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            scanIt.close();
+        }
+    }
+
+
 }
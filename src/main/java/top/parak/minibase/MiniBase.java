@@ -2,6 +2,7 @@ package top.parak.minibase;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Mini base.
@@ -29,6 +30,37 @@ public interface MiniBase extends Closeable {
      */
     KeyValue get(byte[] key) throws IOException;
 
+    /**
+     * Get the KeyValue corresponding to the specified key with the specified options.
+     *
+     * @param key     the byte array of the key
+     * @param options the read options
+     * @return the KeyValue
+     * @throws IOException if an IOException occurs
+     */
+    KeyValue get(byte[] key, ReadOptions options) throws IOException;
+
+    /**
+     * Get the KeyValues corresponding to the specified keys, all read at the same
+     * sequence id. The disk files are read in parallel, and each block is loaded at
+     * most once per call.
+     *
+     * @param keys the byte arrays of the keys
+     * @return the KeyValues in the order of the keys, {@code null} for the missing keys
+     * @throws IOException if an IOException occurs
+     */
+    List<KeyValue> multiGet(List<byte[]> keys) throws IOException;
+
+    /**
+     * Get the KeyValues corresponding to the specified keys with the specified options.
+     *
+     * @param keys    the byte arrays of the keys
+     * @param options the read options
+     * @return the KeyValues in the order of the keys, {@code null} for the missing keys
+     * @throws IOException if an IOException occurs
+     */
+    List<KeyValue> multiGet(List<byte[]> keys, ReadOptions options) throws IOException;
+
     /**
      * Delete the key-value pair corresponding to the specified key.
      *
@@ -37,6 +69,16 @@ public interface MiniBase extends Closeable {
      */
     void delete(byte[] key) throws IOException;
 
+    /**
+     * Apply all the mutations of the specified batch atomically. The mutations get a
+     * contiguous range of sequence ids, and become visible to {@link #get} and
+     * {@link #scan} all at once.
+     *
+     * @param batch the batch of mutations
+     * @throws IOException if an IOException occurs
+     */
+    void write(WriteBatch batch) throws IOException;
+
     /**
      * Fetch all the KeyValues whose key located in the range [startKey, stopKey)
      *
@@ -49,4 +91,109 @@ public interface MiniBase extends Closeable {
      */
     Iter<KeyValue> scan(byte[] startKey, byte[] endKey) throws IOException;
 
+    /**
+     * Fetch all the KeyValues whose key located in the range [startKey, stopKey)
+     * with the specified options.
+     *
+     * @param startKey the start key to scan (inclusive)
+     * @param endKey   the end key to scan (exclusive)
+     * @param options  the read options
+     * @return Iterator for fetching KeyValue one by one
+     * @throws IOException if an IOException occurs
+     */
+    Iter<KeyValue> scan(byte[] startKey, byte[] endKey, ReadOptions options) throws IOException;
+
+    /**
+     * Fetch a page of the KeyValues whose key located in the range [startKey, stopKey)
+     * with the specified scan options, which continues after the resume token if any.
+     *
+     * @param startKey the start key to scan (inclusive)
+     * @param endKey   the end key to scan (exclusive)
+     * @param options  the scan options
+     * @return Iterator for fetching KeyValue one by one, and the token for the next page
+     * @throws IOException if an IOException occurs
+     */
+    ResumableIter<KeyValue> scan(byte[] startKey, byte[] endKey, ScanOptions options) throws IOException;
+
+    /**
+     * Fetch all the KeyValues whose key located in the range [startKey, stopKey) in
+     * descending order of the keys. Fetching the last N KeyValues only reads them, not
+     * the whole range.
+     *
+     * @param startKey the start key to scan (inclusive).
+     *                 if startKey is {@code byte[0]}, it means negative infinity.
+     * @param endKey   the end key to scan (exclusive).
+     *                 if endKey is {@code byte[0]}, it means positive infinity.
+     * @return Iterator for fetching KeyValue one by one
+     * @throws IOException if an IOException occurs
+     */
+    Iter<KeyValue> reverseScan(byte[] startKey, byte[] endKey) throws IOException;
+
+    /**
+     * Fetch all the KeyValues whose key located in the range [startKey, stopKey) in
+     * descending order of the keys with the specified options.
+     *
+     * @param startKey the start key to scan (inclusive)
+     * @param endKey   the end key to scan (exclusive)
+     * @param options  the read options
+     * @return Iterator for fetching KeyValue one by one
+     * @throws IOException if an IOException occurs
+     */
+    Iter<KeyValue> reverseScan(byte[] startKey, byte[] endKey, ReadOptions options) throws IOException;
+
+    /**
+     * Fetch a page of the KeyValues whose key located in the range [startKey, stopKey) in
+     * descending order of the keys with the specified scan options, which continues after
+     * the resume token if any.
+     *
+     * @param startKey the start key to scan (inclusive)
+     * @param endKey   the end key to scan (exclusive)
+     * @param options  the scan options
+     * @return Iterator for fetching KeyValue one by one, and the token for the next page
+     * @throws IOException if an IOException occurs
+     */
+    ResumableIter<KeyValue> reverseScan(byte[] startKey, byte[] endKey, ScanOptions options) throws IOException;
+
+    /**
+     * Fetch all the KeyValues whose key starts with the specified prefix. If the prefix is
+     * exactly what the configured {@link PrefixExtractor} extracts from such keys, the disk
+     * files and blocks whose prefix bloom filters rule it out are never read.
+     *
+     * <p>Only supported with {@link KeyComparator#BYTEWISE}, the only order in which the
+     * keys starting with a prefix are contiguous.</p>
+     *
+     * @param prefix the key prefix, {@code byte[0]} means all the keys
+     * @return Iterator for fetching KeyValue one by one
+     * @throws IOException if an IOException occurs
+     * @throws IllegalArgumentException if the key comparator is not bytewise
+     */
+    Iter<KeyValue> prefixScan(byte[] prefix) throws IOException;
+
+    /**
+     * Fetch all the KeyValues whose key starts with the specified prefix with the specified
+     * options.
+     *
+     * @param prefix  the key prefix
+     * @param options the read options
+     * @return Iterator for fetching KeyValue one by one
+     * @throws IOException if an IOException occurs
+     */
+    Iter<KeyValue> prefixScan(byte[] prefix, ReadOptions options) throws IOException;
+
+    /**
+     * Take a snapshot of the latest completed writes, reads with it are repeatable
+     * until it's released.
+     *
+     * @return the snapshot
+     */
+    Snapshot getSnapshot();
+
+    /**
+     * Release the specified snapshot, so that compaction can drop the versions
+     * only visible to it.
+     *
+     * @param snapshot the snapshot to release
+     */
+    void releaseSnapshot(Snapshot snapshot);
+
 }
@@ -0,0 +1,38 @@
+package top.parak.minibase;
+
+import java.util.Arrays;
+
+/**
+ * Prefix extractor.
+ *
+ * <p>Maps a key to its prefix, such as the tenant id of the key, for the prefix bloom filters
+ * of the disk files. It must be consistent: every key starting with a prefix P returned by the
+ * extractor must be mapped to P as well. Like the key comparator, it's not persisted, and a
+ * data dir must always be opened with the same extractor.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+@FunctionalInterface
+public interface PrefixExtractor {
+
+    /**
+     * Extract the prefix of the specified key.
+     *
+     * @param key the byte array of the key
+     * @return the prefix, or {@code null} if the key has no prefix
+     */
+    byte[] extract(byte[] key);
+
+    /**
+     * Get the extractor taking the first bytes of the keys as their prefixes, the keys
+     * shorter than that have no prefix.
+     *
+     * @param length the length of the prefixes
+     * @return the extractor
+     */
+    static PrefixExtractor fixedLength(int length) {
+        return key -> key.length >= length ? Arrays.copyOf(key, length) : null;
+    }
+
+}
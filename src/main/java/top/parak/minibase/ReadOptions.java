@@ -0,0 +1,28 @@
+package top.parak.minibase;
+
+/**
+ * Read options.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class ReadOptions {
+
+    private Snapshot snapshot;
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Read as of the specified snapshot, or as of the latest completed write if {@code null}.
+     *
+     * @param snapshot the snapshot to read
+     * @return this options
+     */
+    public ReadOptions setSnapshot(Snapshot snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
+
+}
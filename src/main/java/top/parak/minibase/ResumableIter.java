@@ -0,0 +1,24 @@
+package top.parak.minibase;
+
+import java.io.IOException;
+
+/**
+ * Resumable iterator.
+ *
+ * <p>An iterator over one page of a scan, which can be continued by another scan with
+ * the resume token, see {@link ScanOptions#setResumeToken(byte[])}.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public interface ResumableIter<KV> extends Iter<KV> {
+
+    /**
+     * Get the opaque token to continue the scan after the last returned element.
+     *
+     * @return the token, or {@code null} if the scan has no more elements
+     * @throws IOException if an IOException occurs
+     */
+    byte[] getResumeToken() throws IOException;
+
+}
@@ -0,0 +1,104 @@
+package top.parak.minibase;
+
+import top.parak.minibase.toolkit.Requires;
+
+import java.util.Arrays;
+
+/**
+ * Scan options.
+ *
+ * <p>On top of the read options, a scan can be limited to a number of KeyValues, project
+ * the keys only, and resume a previous scan by the token of its last page, see
+ * {@link ResumableIter#getResumeToken()}.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class ScanOptions extends ReadOptions {
+
+    private static final byte RESUME_TOKEN_VERSION = 1;
+
+    private int     limit = Integer.MAX_VALUE;
+    private boolean keysOnly = false;
+    private byte[]  resumeToken;
+
+    @Override
+    public ScanOptions setSnapshot(Snapshot snapshot) {
+        super.setSnapshot(snapshot);
+        return this;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Return at most the specified number of KeyValues, nothing past them is read.
+     *
+     * @param limit the max number of KeyValues
+     * @return this options
+     */
+    public ScanOptions setLimit(int limit) {
+        Requires.requireTrue(limit > 0, "limit must be positive");
+        this.limit = limit;
+        return this;
+    }
+
+    public boolean isKeysOnly() {
+        return keysOnly;
+    }
+
+    /**
+     * Return the KeyValues with empty values, which are never copied out of the blocks.
+     *
+     * @param keysOnly whether to return the keys only
+     * @return this options
+     */
+    public ScanOptions setKeysOnly(boolean keysOnly) {
+        this.keysOnly = keysOnly;
+        return this;
+    }
+
+    public byte[] getResumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * Continue a previous scan of the same range in the same direction after the last
+     * KeyValue it returned, or start from the beginning if {@code null}.
+     *
+     * @param resumeToken the token returned by {@link ResumableIter#getResumeToken()}
+     * @return this options
+     */
+    public ScanOptions setResumeToken(byte[] resumeToken) {
+        if (resumeToken != null) {
+            Requires.requireTrue(resumeToken.length >= 2 && resumeToken[0] == RESUME_TOKEN_VERSION,
+                    "invalid resume token");
+        }
+        this.resumeToken = resumeToken;
+        return this;
+    }
+
+    /**
+     * Encode the token as [version 1][has key 1][last key], where no key means that the
+     * scan hasn't returned anything yet.
+     */
+    static byte[] encodeResumeToken(byte[] lastKey) {
+        if (lastKey == null) {
+            return new byte[]{RESUME_TOKEN_VERSION, 0};
+        }
+        byte[] token = new byte[lastKey.length + 2];
+        token[0] = RESUME_TOKEN_VERSION;
+        token[1] = 1;
+        System.arraycopy(lastKey, 0, token, 2, lastKey.length);
+        return token;
+    }
+
+    static byte[] decodeResumeToken(byte[] token) {
+        if (token == null || token[1] == 0) {
+            return null;
+        }
+        return Arrays.copyOfRange(token, 2, token.length);
+    }
+
+}
@@ -0,0 +1,34 @@
+package top.parak.minibase;
+
+/**
+ * Snapshot.
+ *
+ * <p>A handle pinning a sequence id: reads through a snapshot only see the KeyValues whose
+ * sequence id is not greater than it, and compaction keeps the versions it needs until
+ * {@link MiniBase#releaseSnapshot(Snapshot)} is called.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class Snapshot {
+
+    private final long       sequenceId;
+    private volatile boolean released = false;
+
+    Snapshot(long sequenceId) {
+        this.sequenceId = sequenceId;
+    }
+
+    public long getSequenceId() {
+        return sequenceId;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    void markReleased() {
+        this.released = true;
+    }
+
+}
@@ -0,0 +1,77 @@
+package top.parak.minibase;
+
+import top.parak.minibase.toolkit.Bytes;
+import top.parak.minibase.toolkit.Requires;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write batch.
+ *
+ * <p>Collects puts and deletes which are applied by {@link MiniBase#write(WriteBatch)}
+ * atomically: they get a contiguous range of sequence ids, and become visible to readers
+ * all at once.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class WriteBatch {
+
+    static class Mutation {
+        final byte[] key;
+        final byte[] value;
+        final Op     op;
+
+        Mutation(byte[] key, byte[] value, Op op) {
+            this.key = key;
+            this.value = value;
+            this.op = op;
+        }
+    }
+
+    private final List<Mutation> mutations = new ArrayList<>();
+
+    /**
+     * Add a put of the specified key-value pair into the batch.
+     *
+     * @param key   the byte array of the key
+     * @param value the byte array of the value
+     * @return this batch
+     */
+    public WriteBatch put(byte[] key, byte[] value) {
+        Requires.requireNotNull(key, "key cannot be null");
+        Requires.requireNotNull(value, "value cannot be null");
+        mutations.add(new Mutation(key, value, Op.Put));
+        return this;
+    }
+
+    /**
+     * Add a delete of the specified key into the batch.
+     *
+     * @param key the byte array of the key
+     * @return this batch
+     */
+    public WriteBatch delete(byte[] key) {
+        Requires.requireNotNull(key, "key cannot be null");
+        mutations.add(new Mutation(key, Bytes.EMPTY_BYTES, Op.Delete));
+        return this;
+    }
+
+    public int size() {
+        return mutations.size();
+    }
+
+    public boolean isEmpty() {
+        return mutations.isEmpty();
+    }
+
+    public void clear() {
+        mutations.clear();
+    }
+
+    List<Mutation> getMutations() {
+        return mutations;
+    }
+
+}
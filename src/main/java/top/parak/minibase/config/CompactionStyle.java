@@ -0,0 +1,25 @@
+package top.parak.minibase.config;
+
+/**
+ * Compaction style.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public enum CompactionStyle {
+    /**
+     * Once there are more disk files than the max, merge the overlapping ones into one file.
+     */
+    Merge,
+    /**
+     * Flushed files make up level 0, and compactions push data down into the levels 1 .. n
+     * of non-overlapping files, each level a multiple of the size of the one above.
+     */
+    Leveled,
+    /**
+     * Merge runs of disk files of similar size, so that the files form tiers growing by
+     * about the min merge width each.
+     */
+    SizeTiered,
+    ;
+}
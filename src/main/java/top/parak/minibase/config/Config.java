@@ -1,5 +1,10 @@
 package top.parak.minibase.config;
 
+import top.parak.minibase.KeyComparator;
+import top.parak.minibase.PrefixExtractor;
+import top.parak.minibase.storage.CompactionFilter;
+import top.parak.minibase.storage.CompactionStrategy;
+
 /**
  * Base config.
  *
@@ -16,6 +21,47 @@ public class Config {
     private int    maxDiskFiles = 10;
     private int    maxThreadPoolSize = 5;
 
+    private int  maxImmutableMemTables = 4;
+    private int  writeSlowdownMemTables = 2;
+    private long writeSlowdownDelayMs = 1;
+    private long writeStallTimeoutMs = 60 * 1000;
+
+    private boolean     walEnabled = true;
+    private WalSyncMode walSyncMode = WalSyncMode.EveryWrite;
+    private long        walSyncIntervalMs = 1000;
+
+    private MemTableType memTableType = MemTableType.SkipList;
+    private int          arenaSlabSize = 2 * 1024 * 1024;
+    private int          memTableShards = 1;
+
+    private long blockCacheCapacity = 64 * 1024 * 1024;
+    private int  blockCacheShards = 16;
+
+    private DiskFileReadMode diskFileReadMode = DiskFileReadMode.Read;
+
+    private KeyComparator keyComparator = KeyComparator.BYTEWISE;
+
+    private int readaheadMaxBlocks = 8;
+    private int readaheadThreads = 2;
+
+    private int multiGetThreads = 4;
+
+    private PrefixExtractor prefixExtractor = null;
+
+    private CompactionStyle compactionStyle = CompactionStyle.Leveled;
+    private int             level0CompactionTrigger = 4;
+    private long            maxBytesForLevelBase = 64 * 1024 * 1024;
+    private int             levelSizeMultiplier = 10;
+    private int             maxLevels = 7;
+    private long            targetFileSize = 16 * 1024 * 1024;
+    private int             sizeTieredSizeRatio = 1;
+    private int             sizeTieredMinMergeWidth = 2;
+
+    private CompactionStrategy compactionStrategy = null;
+    private int                maxSubcompactions = 4;
+    private CompactionFilter   compactionFilter = null;
+    private long               ttlMs = 0;
+
     public long getMaxMemStoreSize() {
         return maxMemStoreSize;
     }
@@ -61,6 +107,379 @@ public class Config {
         return this;
     }
 
+    public int getMaxImmutableMemTables() {
+        return maxImmutableMemTables;
+    }
+
+    public Config setMaxImmutableMemTables(int maxImmutableMemTables) {
+        this.maxImmutableMemTables = maxImmutableMemTables;
+        return this;
+    }
+
+    public int getWriteSlowdownMemTables() {
+        return writeSlowdownMemTables;
+    }
+
+    public Config setWriteSlowdownMemTables(int writeSlowdownMemTables) {
+        this.writeSlowdownMemTables = writeSlowdownMemTables;
+        return this;
+    }
+
+    public long getWriteSlowdownDelayMs() {
+        return writeSlowdownDelayMs;
+    }
+
+    public Config setWriteSlowdownDelayMs(long writeSlowdownDelayMs) {
+        this.writeSlowdownDelayMs = writeSlowdownDelayMs;
+        return this;
+    }
+
+    public long getWriteStallTimeoutMs() {
+        return writeStallTimeoutMs;
+    }
+
+    public Config setWriteStallTimeoutMs(long writeStallTimeoutMs) {
+        this.writeStallTimeoutMs = writeStallTimeoutMs;
+        return this;
+    }
+
+    public boolean isWalEnabled() {
+        return walEnabled;
+    }
+
+    public Config setWalEnabled(boolean walEnabled) {
+        this.walEnabled = walEnabled;
+        return this;
+    }
+
+    public WalSyncMode getWalSyncMode() {
+        return walSyncMode;
+    }
+
+    public Config setWalSyncMode(WalSyncMode walSyncMode) {
+        this.walSyncMode = walSyncMode;
+        return this;
+    }
+
+    public long getWalSyncIntervalMs() {
+        return walSyncIntervalMs;
+    }
+
+    public Config setWalSyncIntervalMs(long walSyncIntervalMs) {
+        this.walSyncIntervalMs = walSyncIntervalMs;
+        return this;
+    }
+
+    public MemTableType getMemTableType() {
+        return memTableType;
+    }
+
+    public Config setMemTableType(MemTableType memTableType) {
+        this.memTableType = memTableType;
+        return this;
+    }
+
+    public int getArenaSlabSize() {
+        return arenaSlabSize;
+    }
+
+    public Config setArenaSlabSize(int arenaSlabSize) {
+        this.arenaSlabSize = arenaSlabSize;
+        return this;
+    }
+
+    public int getMemTableShards() {
+        return memTableShards;
+    }
+
+    public Config setMemTableShards(int memTableShards) {
+        this.memTableShards = memTableShards;
+        return this;
+    }
+
+    public long getBlockCacheCapacity() {
+        return blockCacheCapacity;
+    }
+
+    /**
+     * Set the capacity of the block cache in bytes, {@code 0} disables the cache.
+     *
+     * @param blockCacheCapacity the capacity in bytes
+     * @return this config
+     */
+    public Config setBlockCacheCapacity(long blockCacheCapacity) {
+        this.blockCacheCapacity = blockCacheCapacity;
+        return this;
+    }
+
+    public int getBlockCacheShards() {
+        return blockCacheShards;
+    }
+
+    /**
+     * Set the number of shards of the block cache, which is capped so that each shard
+     * holds a block of the max size.
+     *
+     * @param blockCacheShards the number of shards
+     * @return this config
+     */
+    public Config setBlockCacheShards(int blockCacheShards) {
+        this.blockCacheShards = blockCacheShards;
+        return this;
+    }
+
+    public DiskFileReadMode getDiskFileReadMode() {
+        return diskFileReadMode;
+    }
+
+    public Config setDiskFileReadMode(DiskFileReadMode diskFileReadMode) {
+        this.diskFileReadMode = diskFileReadMode;
+        return this;
+    }
+
+    public KeyComparator getKeyComparator() {
+        return keyComparator;
+    }
+
+    /**
+     * Set the order of the keys. A data dir must always be opened with the same
+     * comparator it was written with.
+     *
+     * @param keyComparator the key comparator
+     * @return this config
+     */
+    public Config setKeyComparator(KeyComparator keyComparator) {
+        this.keyComparator = keyComparator;
+        return this;
+    }
+
+    public int getReadaheadMaxBlocks() {
+        return readaheadMaxBlocks;
+    }
+
+    /**
+     * Set the max number of blocks prefetched ahead of a sequential disk file iterator,
+     * {@code 0} disables readahead.
+     *
+     * @param readaheadMaxBlocks the max readahead depth in blocks
+     * @return this config
+     */
+    public Config setReadaheadMaxBlocks(int readaheadMaxBlocks) {
+        this.readaheadMaxBlocks = readaheadMaxBlocks;
+        return this;
+    }
+
+    public int getReadaheadThreads() {
+        return readaheadThreads;
+    }
+
+    public Config setReadaheadThreads(int readaheadThreads) {
+        this.readaheadThreads = readaheadThreads;
+        return this;
+    }
+
+    public int getMultiGetThreads() {
+        return multiGetThreads;
+    }
+
+    /**
+     * Set the size of the pool reading different disk files in parallel for a multi-get,
+     * {@code 0} reads them one by one in the calling thread.
+     *
+     * @param multiGetThreads the number of threads
+     * @return this config
+     */
+    public Config setMultiGetThreads(int multiGetThreads) {
+        this.multiGetThreads = multiGetThreads;
+        return this;
+    }
+
+    public PrefixExtractor getPrefixExtractor() {
+        return prefixExtractor;
+    }
+
+    /**
+     * Set the prefix extractor, which enables the prefix bloom filters of the disk files
+     * written afterwards, {@code null} disables them. Only supported with
+     * {@link KeyComparator#BYTEWISE}.
+     *
+     * @param prefixExtractor the prefix extractor
+     * @return this config
+     */
+    public Config setPrefixExtractor(PrefixExtractor prefixExtractor) {
+        this.prefixExtractor = prefixExtractor;
+        return this;
+    }
+
+    public CompactionStyle getCompactionStyle() {
+        return compactionStyle;
+    }
+
+    public Config setCompactionStyle(CompactionStyle compactionStyle) {
+        this.compactionStyle = compactionStyle;
+        return this;
+    }
+
+    public int getLevel0CompactionTrigger() {
+        return level0CompactionTrigger;
+    }
+
+    /**
+     * Set the number of level 0 files which triggers a leveled compaction into level 1.
+     *
+     * @param level0CompactionTrigger the number of level 0 files
+     * @return this config
+     */
+    public Config setLevel0CompactionTrigger(int level0CompactionTrigger) {
+        this.level0CompactionTrigger = level0CompactionTrigger;
+        return this;
+    }
+
+    public long getMaxBytesForLevelBase() {
+        return maxBytesForLevelBase;
+    }
+
+    /**
+     * Set the target size of level 1, the level i is targeted at this size times the level
+     * size multiplier to the power of i - 1.
+     *
+     * @param maxBytesForLevelBase the target size of level 1 in bytes
+     * @return this config
+     */
+    public Config setMaxBytesForLevelBase(long maxBytesForLevelBase) {
+        this.maxBytesForLevelBase = maxBytesForLevelBase;
+        return this;
+    }
+
+    public int getLevelSizeMultiplier() {
+        return levelSizeMultiplier;
+    }
+
+    public Config setLevelSizeMultiplier(int levelSizeMultiplier) {
+        this.levelSizeMultiplier = levelSizeMultiplier;
+        return this;
+    }
+
+    public int getMaxLevels() {
+        return maxLevels;
+    }
+
+    public Config setMaxLevels(int maxLevels) {
+        this.maxLevels = maxLevels;
+        return this;
+    }
+
+    public long getTargetFileSize() {
+        return targetFileSize;
+    }
+
+    /**
+     * Set the size at which a leveled compaction starts a new output file.
+     *
+     * @param targetFileSize the target size of the compacted files in bytes
+     * @return this config
+     */
+    public Config setTargetFileSize(long targetFileSize) {
+        this.targetFileSize = targetFileSize;
+        return this;
+    }
+
+    public int getSizeTieredSizeRatio() {
+        return sizeTieredSizeRatio;
+    }
+
+    /**
+     * Set the percentage by which a disk file may be larger than the run of newer files
+     * for a size-tiered compaction to merge them together.
+     *
+     * @param sizeTieredSizeRatio the size ratio in percent
+     * @return this config
+     */
+    public Config setSizeTieredSizeRatio(int sizeTieredSizeRatio) {
+        this.sizeTieredSizeRatio = sizeTieredSizeRatio;
+        return this;
+    }
+
+    public int getSizeTieredMinMergeWidth() {
+        return sizeTieredMinMergeWidth;
+    }
+
+    /**
+     * Set the min number of disk files a size-tiered compaction merges at once.
+     *
+     * @param sizeTieredMinMergeWidth the min merge width
+     * @return this config
+     */
+    public Config setSizeTieredMinMergeWidth(int sizeTieredMinMergeWidth) {
+        this.sizeTieredMinMergeWidth = sizeTieredMinMergeWidth;
+        return this;
+    }
+
+    public CompactionStrategy getCompactionStrategy() {
+        return compactionStrategy;
+    }
+
+    /**
+     * Set a custom compaction strategy, which overrides the compaction style.
+     *
+     * @param compactionStrategy the compaction strategy, or {@code null} to use the style
+     * @return this config
+     */
+    public Config setCompactionStrategy(CompactionStrategy compactionStrategy) {
+        this.compactionStrategy = compactionStrategy;
+        return this;
+    }
+
+    public int getMaxSubcompactions() {
+        return maxSubcompactions;
+    }
+
+    /**
+     * Set the max number of key-range sub-jobs a compaction is split into and run in
+     * parallel, 1 runs every compaction single-threaded.
+     *
+     * @param maxSubcompactions the max number of sub-jobs per compaction
+     * @return this config
+     */
+    public Config setMaxSubcompactions(int maxSubcompactions) {
+        this.maxSubcompactions = maxSubcompactions;
+        return this;
+    }
+
+    public CompactionFilter getCompactionFilter() {
+        return compactionFilter;
+    }
+
+    /**
+     * Set the filter called by compactions on the KeyValues put, to keep, remove or
+     * rewrite them.
+     *
+     * @param compactionFilter the compaction filter, or {@code null} to keep them all
+     * @return this config
+     */
+    public Config setCompactionFilter(CompactionFilter compactionFilter) {
+        this.compactionFilter = compactionFilter;
+        return this;
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    /**
+     * Set the time to live of the values, after which reads hide them and compactions
+     * remove them. The write time is stored with every value, so a store must be opened
+     * with the same setting, enabled or not, all along, and opening it with the other
+     * setting fails.
+     *
+     * @param ttlMs the time to live in milliseconds, 0 to keep values forever
+     * @return this config
+     */
+    public Config setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+        return this;
+    }
+
     public static Config getDefault() {
         return DEFAULT;
     }
@@ -0,0 +1,19 @@
+package top.parak.minibase.config;
+
+/**
+ * Disk file read mode.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public enum DiskFileReadMode {
+    /**
+     * Read blocks with file I/O into freshly allocated buffers.
+     */
+    Read,
+    /**
+     * Map the whole file into memory and decode blocks right from the mapping.
+     */
+    Mmap,
+    ;
+}
@@ -0,0 +1,19 @@
+package top.parak.minibase.config;
+
+/**
+ * Mem table type.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public enum MemTableType {
+    /**
+     * KeyValues are kept as heap objects in a skip list.
+     */
+    SkipList,
+    /**
+     * KeyValues are serialized into off-heap slab arenas, indexed by a skip list of addresses.
+     */
+    OffHeapArena,
+    ;
+}
@@ -0,0 +1,23 @@
+package top.parak.minibase.config;
+
+/**
+ * Write-ahead log sync mode.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public enum WalSyncMode {
+    /**
+     * Force the log to disk after every group commit.
+     */
+    EveryWrite,
+    /**
+     * Force the log to disk every {@link Config#getWalSyncIntervalMs()} milliseconds.
+     */
+    Interval,
+    /**
+     * Never force the log, leave it to the OS page cache.
+     */
+    OsBuffered,
+    ;
+}
@@ -0,0 +1,465 @@
+package top.parak.minibase.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.parak.minibase.KeyComparator;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.Op;
+import top.parak.minibase.toolkit.ByteBuffers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Off-heap mem table.
+ *
+ * <p>KeyValues are serialized with {@link KeyValue#serialize()} layout into direct
+ * {@link ByteBuffer} slabs, where an address is {@code slab index << 32 | offset in slab}.
+ * They're indexed by a lock-free skip list whose nodes are towers of longs carved out of
+ * {@link AtomicLongArray} chunks, a node being {@code chunk index << 32 | offset in chunk}:
+ * the address of its KeyValue, and then its next node on each level. So an entry costs no
+ * object on heap until it's read, and the links are updated by CAS with the ordering of
+ * volatile accesses, which also publishes the KeyValue written into the slab before.</p>
+ *
+ * <p>One reference is held by the table itself, until the {@link MemStore} drops it once
+ * flushed, and one by each open iterator and in-flight get. The slabs are freed as soon as
+ * all of them are released, instead of waiting for the garbage collector.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class ArenaMemTable implements MemTable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArenaMemTable.class);
+
+    /**
+     * Towers are 1 in 4 one level higher, so 12 levels index 16M entries well.
+     */
+    private static final int MAX_HEIGHT       = 12;
+    private static final int LINK_CHUNK_SIZE  = 1 << 16;
+
+    /**
+     * The head node, allocated first. It also ends every level, since no node links to it.
+     */
+    private static final long HEAD = 0L;
+    private static final long NIL  = HEAD;
+
+    private final int                   slabSize;
+    private final KeyComparator         comparator;
+    private final AtomicLong            allocatedBytes = new AtomicLong();
+    private final AtomicInteger         refCount = new AtomicInteger(1);
+
+    private volatile ByteBuffer[]      slabs = new ByteBuffer[0];
+    private int                        slabOffset;
+    private volatile AtomicLongArray[] links = new AtomicLongArray[0];
+    private int                        linkOffset;
+
+    public ArenaMemTable(int slabSize, KeyComparator comparator) {
+        this.slabSize = slabSize;
+        this.comparator = comparator;
+        allocateNode(MAX_HEIGHT);
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    private synchronized long allocate(int size) {
+        ByteBuffer[] current = slabs;
+        if (current.length == 0 || size > current[current.length - 1].capacity() - slabOffset) {
+            ByteBuffer slab = ByteBuffer.allocateDirect(Math.max(size, slabSize));
+            ByteBuffer[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = slab;
+            slabs = grown;
+            slabOffset = 0;
+            current = grown;
+            allocatedBytes.addAndGet(slab.capacity());
+        }
+        long address = ((long) (current.length - 1) << 32) | slabOffset;
+        slabOffset += size;
+        return address;
+    }
+
+    /**
+     * Allocate the tower of a node, one long for the address of its KeyValue and one for
+     * its next node on each level, all zero, which is {@link #NIL}.
+     */
+    private synchronized long allocateNode(int height) {
+        int size = 1 + height;
+        AtomicLongArray[] current = links;
+        if (current.length == 0 || size > LINK_CHUNK_SIZE - linkOffset) {
+            AtomicLongArray[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = new AtomicLongArray(LINK_CHUNK_SIZE);
+            links = grown;
+            linkOffset = 0;
+            current = grown;
+        }
+        long node = ((long) (current.length - 1) << 32) | linkOffset;
+        linkOffset += size;
+        return node;
+    }
+
+    private ByteBuffer slabOf(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    private AtomicLongArray chunkOf(long node) {
+        return links[(int) (node >>> 32)];
+    }
+
+    private long addressOf(long node) {
+        return chunkOf(node).get(offsetOf(node));
+    }
+
+    private long nextOf(long node, int level) {
+        return chunkOf(node).get(offsetOf(node) + 1 + level);
+    }
+
+    private static int randomHeight() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int height = 1;
+        while (height < MAX_HEIGHT && (random.nextInt() & 3) == 0) {
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * Take a reference to the table, which keeps the slabs until {@link #release()}.
+     *
+     * @return false if the slabs have been freed
+     */
+    private boolean acquire() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a reference, the last one frees the slabs.
+     */
+    @Override
+    public void release() {
+        if (refCount.decrementAndGet() == 0) {
+            ByteBuffer[] freed = slabs;
+            slabs = new ByteBuffer[0];
+            boolean allFreed = true;
+            for (ByteBuffer slab : freed) {
+                allFreed &= ByteBuffers.free(slab);
+            }
+            if (!allFreed) {
+                LOG.warn("Failed to free the slabs of a mem table, leave them to GC");
+            }
+            allocatedBytes.set(0);
+        }
+    }
+
+    @Override
+    public long add(KeyValue kv) {
+        byte[] bytes = kv.serialize();
+        long address = allocate(bytes.length);
+        ByteBuffer dup = slabOf(address).duplicate();
+        dup.position(offsetOf(address));
+        dup.put(bytes);
+        return insert(address) ? bytes.length : 0;
+    }
+
+    /**
+     * Find the last node before the target on a level, starting from a node before it, and
+     * the node after that, into {@code prevs} and {@code nexts} of the level.
+     */
+    private void findSplice(LongToIntFunction target, long prev, int level, long[] prevs, long[] nexts) {
+        long next = nextOf(prev, level);
+        while (next != NIL && target.applyAsInt(addressOf(next)) < 0) {
+            prev = next;
+            next = nextOf(prev, level);
+        }
+        prevs[level] = prev;
+        nexts[level] = next;
+    }
+
+    /**
+     * Link a KeyValue written into the slabs into the skip list, from the bottom level up.
+     * The node is published by the CAS on the bottom level, and a CAS failed because of a
+     * concurrent insert finds the splice on its level again.
+     *
+     * @return false if the same KeyValue is in the table already
+     */
+    private boolean insert(long address) {
+        LongToIntFunction target = a -> compareEntry(a, address);
+        long[] prevs = new long[MAX_HEIGHT];
+        long[] nexts = new long[MAX_HEIGHT];
+        long prev = HEAD;
+        for (int level = MAX_HEIGHT - 1; level >= 0; level--) {
+            findSplice(target, prev, level, prevs, nexts);
+            prev = prevs[level];
+        }
+        if (nexts[0] != NIL && target.applyAsInt(addressOf(nexts[0])) == 0) {
+            return false;
+        }
+
+        int height = randomHeight();
+        long node = allocateNode(height);
+        AtomicLongArray chunk = chunkOf(node);
+        int offset = offsetOf(node);
+        chunk.lazySet(offset, address);
+        for (int level = 0; level < height; level++) {
+            while (true) {
+                chunk.lazySet(offset + 1 + level, nexts[level]);
+                long prevNode = prevs[level];
+                if (chunkOf(prevNode).compareAndSet(offsetOf(prevNode) + 1 + level, nexts[level], node)) {
+                    break;
+                }
+                findSplice(target, prevNode, level, prevs, nexts);
+                if (level == 0 && nexts[0] != NIL && target.applyAsInt(addressOf(nexts[0])) == 0) {
+                    // Lost to the same KeyValue, the node is left unlinked.
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the first node from the target, or the last node before it.
+     *
+     * @return the node, or {@link #NIL} if there is no such node
+     */
+    private long seek(LongToIntFunction target, boolean before) {
+        long prev = HEAD;
+        long next = NIL;
+        for (int level = MAX_HEIGHT - 1; level >= 0; level--) {
+            next = nextOf(prev, level);
+            while (next != NIL && target.applyAsInt(addressOf(next)) < 0) {
+                prev = next;
+                next = nextOf(prev, level);
+            }
+        }
+        return before ? prev : next;
+    }
+
+    private long seekLast() {
+        long prev = HEAD;
+        for (int level = MAX_HEIGHT - 1; level >= 0; level--) {
+            long next = nextOf(prev, level);
+            while (next != NIL) {
+                prev = next;
+                next = nextOf(prev, level);
+            }
+        }
+        return prev;
+    }
+
+    private long seek(KeyValue target, boolean before) {
+        return seek(a -> compareToKv(a, target), before);
+    }
+
+    @Override
+    public KeyValue get(byte[] key, long sequenceId) {
+        // A table whose slabs are freed has been flushed, so it's read from the disk files.
+        if (!acquire()) {
+            return null;
+        }
+        try {
+            long node = seek(KeyValue.createDelete(key, sequenceId), false);
+            if (node == NIL) {
+                return null;
+            }
+            KeyValue kv = decode(addressOf(node));
+            return kv.compareKey(key, comparator) == 0 ? kv : null;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nextOf(HEAD, 0) == NIL;
+    }
+
+    @Override
+    public SeekIter<KeyValue> iterator() {
+        return new ArenaIter(acquire());
+    }
+
+    private int compareEntry(long a, long b) {
+        ByteBuffer bufA = slabOf(a), bufB = slabOf(b);
+        int offA = offsetOf(a), offB = offsetOf(b);
+        int keyLenA = bufA.getInt(offA) - KeyValue.OP_SIZE - KeyValue.SEQ_ID_SIZE;
+        int keyLenB = bufB.getInt(offB) - KeyValue.OP_SIZE - KeyValue.SEQ_ID_SIZE;
+        int keyOffA = offA + KeyValue.RAW_KEY_LEN_SIZE + KeyValue.VAL_LEN_SIZE;
+        int keyOffB = offB + KeyValue.RAW_KEY_LEN_SIZE + KeyValue.VAL_LEN_SIZE;
+
+        int ret = compareKey(bufA, keyOffA, keyLenA, bufB, keyOffB, keyLenB);
+        if (ret != 0) {
+            return ret;
+        }
+        return compareVersion(bufA.get(keyOffA + keyLenA), bufA.getLong(keyOffA + keyLenA + KeyValue.OP_SIZE),
+                bufB.get(keyOffB + keyLenB), bufB.getLong(keyOffB + keyLenB + KeyValue.OP_SIZE));
+    }
+
+    private int compareToKv(long a, KeyValue kv) {
+        ByteBuffer buf = slabOf(a);
+        int off = offsetOf(a);
+        int keyLen = buf.getInt(off) - KeyValue.OP_SIZE - KeyValue.SEQ_ID_SIZE;
+        int keyOff = off + KeyValue.RAW_KEY_LEN_SIZE + KeyValue.VAL_LEN_SIZE;
+        byte[] key = kv.getKey();
+
+        int ret = compareKey(buf, keyOff, keyLen, ByteBuffer.wrap(key), 0, key.length);
+        if (ret != 0) {
+            return ret;
+        }
+        return compareVersion(buf.get(keyOff + keyLen), buf.getLong(keyOff + keyLen + KeyValue.OP_SIZE),
+                kv.getOp().getCode(), kv.getSequenceId());
+    }
+
+    /**
+     * Compare the keys in place for the bytewise order, 8 bytes at a time as unsigned
+     * big-endian longs. Keys are copied out for any other comparator.
+     */
+    private int compareKey(ByteBuffer bufA, int offA, int lenA, ByteBuffer bufB, int offB, int lenB) {
+        if (comparator != KeyComparator.BYTEWISE) {
+            return comparator.compare(copyOf(bufA, offA, lenA), 0, lenA, copyOf(bufB, offB, lenB), 0, lenB);
+        }
+        int minLen = Math.min(lenA, lenB);
+        int i = 0;
+        for (; i + 8 <= minLen; i += 8) {
+            long x = bufA.getLong(offA + i);
+            long y = bufB.getLong(offB + i);
+            if (x != y) {
+                return (x + Long.MIN_VALUE) < (y + Long.MIN_VALUE) ? -1 : 1;
+            }
+        }
+        for (; i < minLen; i++) {
+            int x = bufA.get(offA + i) & 0xFF;
+            int y = bufB.get(offB + i) & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return lenA - lenB;
+    }
+
+    private static byte[] copyOf(ByteBuffer buf, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        dup.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Same order as {@link KeyValue#compareTo(KeyValue)} for equal keys.
+     */
+    private static int compareVersion(byte opA, long seqIdA, byte opB, long seqIdB) {
+        if (seqIdA != seqIdB) {
+            return seqIdA > seqIdB ? -1 : 1;
+        }
+        if (opA != opB) {
+            return opA > opB ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private KeyValue decode(long address) {
+        ByteBuffer dup = slabOf(address).duplicate();
+        dup.position(offsetOf(address));
+        int rawKeyLen = dup.getInt();
+        int valLen = dup.getInt();
+        byte[] key = new byte[rawKeyLen - KeyValue.OP_SIZE - KeyValue.SEQ_ID_SIZE];
+        dup.get(key);
+        Op op = Op.getByCode(dup.get());
+        long sequenceId = dup.getLong();
+        byte[] value = new byte[valLen];
+        dup.get(value);
+        return KeyValue.create(key, value, op, sequenceId);
+    }
+
+    /**
+     * Iterator holding a reference to the table until it's closed. Backwards, every step
+     * seeks for the node before, since the nodes only link forwards.
+     */
+    private class ArenaIter implements SeekIter<KeyValue> {
+        private boolean released;
+        private long    node = NIL;
+        private long    reverseNode = NIL;
+
+        /**
+         * @param acquired false if the slabs have been freed, and the iterator is empty
+         */
+        ArenaIter(boolean acquired) {
+            this.released = !acquired;
+            if (acquired) {
+                node = nextOf(HEAD, 0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return node != NIL;
+        }
+
+        @Override
+        public KeyValue next() throws IOException {
+            AtomicLongArray chunk = chunkOf(node);
+            int offset = offsetOf(node);
+            KeyValue kv = decode(chunk.get(offset));
+            node = chunk.get(offset + 1);
+            return kv;
+        }
+
+        @Override
+        public void seekTo(KeyValue target) throws IOException {
+            node = released ? NIL : seek(target, false);
+        }
+
+        @Override
+        public void seekToLast() throws IOException {
+            reverseNode = released ? NIL : seekLast();
+        }
+
+        @Override
+        public void seekForPrev(KeyValue target) throws IOException {
+            reverseNode = released ? NIL : seek(target, true);
+        }
+
+        @Override
+        public boolean hasPrev() throws IOException {
+            return reverseNode != NIL;
+        }
+
+        @Override
+        public KeyValue prev() throws IOException {
+            long address = addressOf(reverseNode);
+            reverseNode = seek(a -> compareEntry(a, address), true);
+            return decode(address);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!released) {
+                released = true;
+                node = NIL;
+                reverseNode = NIL;
+                release();
+            }
+        }
+    }
+
+}
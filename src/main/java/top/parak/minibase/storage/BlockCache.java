@@ -0,0 +1,207 @@
+package top.parak.minibase.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.parak.minibase.toolkit.Requires;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Block cache.
+ *
+ * <p>Caches the decoded blocks of all the disk files, keyed by (file id, block offset).
+ * The cache is split into shards, each an LRU list guarded by its own lock and bounded by
+ * its share of the capacity, which is accounted by the encoded size of the blocks.</p>
+ *
+ * <p>The shards are capped in number so that each of them holds a block of the largest
+ * size, and a block larger than a shard is not cached but counted as rejected.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class BlockCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockCache.class);
+
+    private static class BlockKey {
+        final long fileId;
+        final long blockOffset;
+
+        BlockKey(long fileId, long blockOffset) {
+            this.fileId = fileId;
+            this.blockOffset = blockOffset;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BlockKey)) return false;
+            BlockKey that = (BlockKey) obj;
+            return this.fileId == that.fileId && this.blockOffset == that.blockOffset;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = fileId * 31 + blockOffset;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private static class CachedBlock {
+        final BlockReader reader;
+        final long        size;
+
+        CachedBlock(BlockReader reader, long size) {
+            this.reader = reader;
+            this.size = size;
+        }
+    }
+
+    private class Shard {
+        private final LinkedHashMap<BlockKey, CachedBlock> lru = new LinkedHashMap<>(16, 0.75f, true);
+        private final long capacity;
+        private long       usedBytes = 0;
+
+        Shard(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized BlockReader get(BlockKey key) {
+            CachedBlock block = lru.get(key);
+            return block == null ? null : block.reader;
+        }
+
+        synchronized void put(BlockKey key, CachedBlock block) {
+            if (block.size > capacity) {
+                rejections.increment();
+                if (rejectionLogged.compareAndSet(false, true)) {
+                    LOG.warn("Block of {} bytes exceeds block cache shard capacity {}, not cached", block.size, capacity);
+                }
+                return;
+            }
+            CachedBlock prev = lru.put(key, block);
+            usedBytes += block.size - (prev == null ? 0 : prev.size);
+            while (usedBytes > capacity) {
+                Map.Entry<BlockKey, CachedBlock> eldest = lru.entrySet().iterator().next();
+                lru.remove(eldest.getKey());
+                usedBytes -= eldest.getValue().size;
+                evictions.increment();
+            }
+        }
+
+        synchronized void evictFile(long fileId) {
+            lru.entrySet().removeIf(entry -> {
+                if (entry.getKey().fileId == fileId) {
+                    usedBytes -= entry.getValue().size;
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        synchronized long getUsedBytes() {
+            return usedBytes;
+        }
+    }
+
+    private final Shard[]   shards;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final AtomicBoolean rejectionLogged = new AtomicBoolean(false);
+
+    public BlockCache(long capacity, int shardCount) {
+        Requires.requireTrue(capacity > 0, "capacity must be positive");
+        Requires.requireTrue(shardCount > 0, "shardCount must be positive");
+
+        int maxShardCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE, capacity / DiskFileWriter.BLOCK_SIZE_UP_LIMIT));
+        if (shardCount > maxShardCount) {
+            LOG.info("Block cache capacity {} only fits {} shards of the max block size, instead of {}",
+                    capacity, maxShardCount, shardCount);
+            shardCount = maxShardCount;
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(capacity / shardCount);
+        }
+    }
+
+    private Shard shardOf(BlockKey key) {
+        return shards[(key.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    /**
+     * Get the cached block.
+     *
+     * @param fileId      the id of the disk file
+     * @param blockOffset the offset of the block in the disk file
+     * @return the block, or {@code null} if it's not cached
+     */
+    public BlockReader get(long fileId, long blockOffset) {
+        BlockKey key = new BlockKey(fileId, blockOffset);
+        BlockReader reader = shardOf(key).get(key);
+        if (reader != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return reader;
+    }
+
+    /**
+     * Cache a block.
+     *
+     * @param fileId      the id of the disk file
+     * @param blockOffset the offset of the block in the disk file
+     * @param reader      the decoded block
+     * @param blockSize   the encoded size of the block
+     */
+    public void put(long fileId, long blockOffset, BlockReader reader, long blockSize) {
+        BlockKey key = new BlockKey(fileId, blockOffset);
+        shardOf(key).put(key, new CachedBlock(reader, blockSize));
+    }
+
+    /**
+     * Invalidate all the cached blocks of a disk file.
+     *
+     * @param fileId the id of the disk file
+     */
+    public void evictFile(long fileId) {
+        for (Shard shard : shards) {
+            shard.evictFile(fileId);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of blocks not cached for being larger than a shard.
+     *
+     * @return the number of rejected blocks
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    public long getUsedBytes() {
+        long usedBytes = 0;
+        for (Shard shard : shards) {
+            usedBytes += shard.getUsedBytes();
+        }
+        return usedBytes;
+    }
+
+}
@@ -17,8 +17,8 @@ public class BlockIndexWriter {
     private final List<BlockMeta> blockMetaList = new ArrayList<>();
     private int totalBytes = 0;
 
-    public void append(KeyValue lastKV, long offset, long size, byte[] bloomFilter) {
-        BlockMeta blockMeta = new BlockMeta(lastKV, offset, size, bloomFilter);
+    public void append(KeyValue lastKV, long offset, long size, byte[] bloomFilter, byte[] prefixBloomFilter) {
+        BlockMeta blockMeta = new BlockMeta(lastKV, offset, size, bloomFilter, prefixBloomFilter);
         blockMetaList.add(blockMeta);
         totalBytes += blockMeta.getSerializeSize();
     }
@@ -21,12 +21,18 @@ public class BlockMeta implements Comparable<BlockMeta> {
     private long     blockOffset;
     private long     blockSize;
     private byte[]   bloomFilter;
+    private byte[]   prefixBloomFilter;
 
     public BlockMeta(KeyValue lastKV, long blockOffset, long blockSize, byte[] bloomFilter) {
+        this(lastKV, blockOffset, blockSize, bloomFilter, Bytes.EMPTY_BYTES);
+    }
+
+    public BlockMeta(KeyValue lastKV, long blockOffset, long blockSize, byte[] bloomFilter, byte[] prefixBloomFilter) {
         this.lastKV = lastKV;
         this.blockOffset = blockOffset;
         this.blockSize = blockSize;
         this.bloomFilter = bloomFilter;
+        this.prefixBloomFilter = prefixBloomFilter;
     }
 
     public KeyValue getLastKV() {
@@ -45,13 +51,23 @@ public class BlockMeta implements Comparable<BlockMeta> {
         return bloomFilter;
     }
 
+    /**
+     * Get the bloom filter of the key prefixes in the block.
+     *
+     * @return the bloom filter, empty if the block was written without a prefix extractor
+     */
+    public byte[] getPrefixBloomFilter() {
+        return prefixBloomFilter;
+    }
+
     @Override
     public int compareTo(BlockMeta that) {
         return this.lastKV.compareTo(that.lastKV);
     }
 
     public int getSerializeSize() {
-        return lastKV.getSerializeSize() +  OFFSET_SIZE + SIZE_SIZE  + BF_LEN_SIZE + bloomFilter.length;
+        return lastKV.getSerializeSize() +  OFFSET_SIZE + SIZE_SIZE  + BF_LEN_SIZE + bloomFilter.length
+                + BF_LEN_SIZE + prefixBloomFilter.length;
     }
 
     public byte[] serialize() throws IOException {
@@ -70,7 +86,7 @@ public class BlockMeta implements Comparable<BlockMeta> {
 
         // Encode blockSize
         byte[] sizeBytes = Bytes.toBytes(blockSize);
-        System.arraycopy(bloomFilter, 0, bytes, pos, sizeBytes.length);
+        System.arraycopy(sizeBytes, 0, bytes, pos, sizeBytes.length);
         pos += sizeBytes.length;
 
         // Encode length of bloom filter
@@ -82,6 +98,15 @@ public class BlockMeta implements Comparable<BlockMeta> {
         System.arraycopy(bloomFilter, 0, bytes, pos, bloomFilter.length);
         pos += bloomFilter.length;
 
+        // Encode length of prefix bloom filter
+        byte[] prefixBfLenBytes = Bytes.toBytes(prefixBloomFilter.length);
+        System.arraycopy(prefixBfLenBytes, 0, bytes, pos, prefixBfLenBytes.length);
+        pos += prefixBfLenBytes.length;
+
+        // Encode prefix bloom filter
+        System.arraycopy(prefixBloomFilter, 0, bytes, pos, prefixBloomFilter.length);
+        pos += prefixBloomFilter.length;
+
         if (pos != bytes.length) {
             throw new IOException("pos(" + pos + ") should be equal to length of bytes(" + bytes.length + ")");
         }
@@ -111,10 +136,18 @@ public class BlockMeta implements Comparable<BlockMeta> {
         byte[] bloomFilter = Bytes.slice(bytes, pos, bloomFilterLen);
         pos += bloomFilterLen;
 
-        if (pos <= bytes.length) {
+        // Decode length of prefix bloom filter
+        int prefixBloomFilterLen = Bytes.toInt(Bytes.slice(bytes, pos, BF_LEN_SIZE));
+        pos += BF_LEN_SIZE;
+
+        // Decode prefix bloom filter
+        byte[] prefixBloomFilter = Bytes.slice(bytes, pos, prefixBloomFilterLen);
+        pos += prefixBloomFilterLen;
+
+        if (pos > bytes.length) {
             throw new IOException("pos(" + pos + ") should be less or equal than length of buf(" + bytes.length +")");
         }
-        return new BlockMeta(lastKV, blockOffset, blockSize, bloomFilter);
+        return new BlockMeta(lastKV, blockOffset, blockSize, bloomFilter, prefixBloomFilter);
     }
 
 }
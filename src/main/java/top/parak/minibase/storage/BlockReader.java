@@ -1,62 +1,237 @@
 package top.parak.minibase.storage;
 
+import top.parak.minibase.KeyComparator;
 import top.parak.minibase.KeyValue;
+import top.parak.minibase.Op;
 import top.parak.minibase.toolkit.Bytes;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.zip.CRC32;
-import java.util.zip.Checksum;
 
 /**
  * Block reader.
  *
+ * <p>Holds the encoded block, and decodes KeyValues only when they are read, see
+ * {@link BlockWriter} for the block structure. KeyValues are addressed by their offset
+ * in the block, from {@link #getFirstOffset()} up to {@link #getEndOffset()}.</p>
+ *
+ * <p>The block is decoded in place, without copying it out of its buffer. A block over a
+ * heap buffer reads KeyValues as views over the buffer, while a block over a direct
+ * buffer, such as a slice of a memory-mapped file, copies out each KeyValue read, so that
+ * the KeyValue stays valid after the buffer does not. Such a block is only valid as long
+ * as its buffer, see {@link #detach()} for keeping it longer.</p>
+ *
  * @author Khighness
  * @since 2023-08-03
  */
 public class BlockReader {
 
-    private final List<KeyValue> kvBuf;
+    private final ByteBuffer buf;
+    private final byte[]     array;
+    private final int        arrayOffset;
+    private final int        kvCount;
+    private final int[]      restarts;
+    private final int        endOffset;
+
+    private BlockReader(ByteBuffer buf, int kvCount, int[] restarts, int endOffset) {
+        this.buf = buf;
+        this.array = buf.hasArray() ? buf.array() : null;
+        this.arrayOffset = buf.hasArray() ? buf.arrayOffset() : 0;
+        this.kvCount = kvCount;
+        this.restarts = restarts;
+        this.endOffset = endOffset;
+    }
+
+    public int getKvCount() {
+        return kvCount;
+    }
+
+    public int getFirstOffset() {
+        return BlockWriter.KV_SIZE_LEN;
+    }
+
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Get the KeyValue at the specified offset. A block over a heap buffer returns a view
+     * over the block which copies nothing until its key or value is accessed, and a block
+     * over a direct buffer returns a copy.
+     *
+     * @param offset the offset of the KeyValue in the block
+     * @return the KeyValue
+     * @throws IOException if the block is mis-encoded
+     */
+    public KeyValue read(int offset) throws IOException {
+        if (array != null) {
+            return KeyValue.wrap(array, arrayOffset + offset);
+        }
+        return KeyValue.deserialize(buf, offset);
+    }
 
-    public BlockReader(List<KeyValue> kvBuf) {
-        this.kvBuf = kvBuf;
+    /**
+     * Get the KeyValue at the specified offset for comparing, without copying its value out
+     * of a direct buffer.
+     */
+    private KeyValue readKey(int offset) throws IOException {
+        if (array != null) {
+            return KeyValue.wrap(array, arrayOffset + offset);
+        }
+        int rawKeyLen = buf.getInt(offset);
+        int keyLen = rawKeyLen - KeyValue.OP_SIZE - KeyValue.SEQ_ID_SIZE;
+        int keyOffset = offset + KeyValue.RAW_KEY_LEN_SIZE + KeyValue.VAL_LEN_SIZE;
+        if (keyLen < 0 || keyOffset + rawKeyLen > endOffset) {
+            throw new IOException("Buffer overflow, offset: " + offset + ", raw key len: " + rawKeyLen
+                    + ", end offset: " + endOffset);
+        }
+        ByteBuffer dup = buf.duplicate();
+        dup.position(keyOffset);
+        byte[] key = new byte[keyLen];
+        dup.get(key);
+        Op op = Op.getByCode(dup.get());
+        long sequenceId = dup.getLong();
+        return KeyValue.create(key, Bytes.EMPTY_BYTES, op, sequenceId);
     }
 
-    public List<KeyValue> getKvBuf() {
-        return kvBuf;
+    /**
+     * Get the encoded size of the KeyValue at the specified offset, without decoding it.
+     */
+    private int sizeAt(int offset) {
+        return KeyValue.RAW_KEY_LEN_SIZE + KeyValue.VAL_LEN_SIZE + buf.getInt(offset)
+                + buf.getInt(offset + KeyValue.RAW_KEY_LEN_SIZE);
+    }
+
+    /**
+     * Find the first KeyValue not less than the target, by binary-searching the restart
+     * points first, and then walking at most one restart interval.
+     *
+     * @param target     the target KeyValue
+     * @param comparator the key comparator
+     * @return the offset of the found KeyValue, or {@link #getEndOffset()} if all the
+     *         KeyValues are less than the target
+     * @throws IOException if the block is mis-encoded
+     */
+    public int seek(KeyValue target, KeyComparator comparator) throws IOException {
+        // Find the last restart point whose KeyValue is less than the target.
+        int lo = 0, hi = restarts.length - 1, found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readKey(restarts[mid]).compareTo(target, comparator) < 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        int offset = restarts.length == 0 ? endOffset : restarts[found];
+        while (offset < endOffset) {
+            if (readKey(offset).compareTo(target, comparator) >= 0) {
+                break;
+            }
+            offset += sizeAt(offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Get the offsets of the KeyValues from the first one up to the specified offset, for
+     * walking the block backwards.
+     *
+     * @param endOffset the offset to stop at (exclusive)
+     * @return the offsets in ascending order
+     * @throws IOException if the block is mis-encoded
+     */
+    public int[] offsetsBefore(int endOffset) throws IOException {
+        int[] offsets = new int[kvCount];
+        int count = 0;
+        for (int offset = getFirstOffset(); offset < endOffset; offset += sizeAt(offset)) {
+            if (count == offsets.length) {
+                throw new IOException("More KeyValues than the kv size(" + kvCount + ") before offset " + endOffset);
+            }
+            offsets[count++] = offset;
+        }
+        return count == offsets.length ? offsets : Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Get a block reader owning a heap copy of the block, so that it stays valid after the
+     * buffer of this block does not, such as for caching a block of a memory-mapped file.
+     *
+     * @return this block reader if it exactly owns a heap buffer, or a copy otherwise
+     */
+    public BlockReader detach() {
+        int size = buf.remaining();
+        if (array != null && arrayOffset == 0 && array.length == size) {
+            return this;
+        }
+        byte[] bytes = new byte[size];
+        buf.duplicate().get(bytes);
+        return new BlockReader(ByteBuffer.wrap(bytes), kvCount, restarts, endOffset);
     }
 
     public static BlockReader deserialize(byte[] bytes, int offset, int size) throws IOException {
-        int pos = offset;
-        List<KeyValue> kvBuf = new ArrayList<>();
-        Checksum crc32 = new CRC32();
+        return deserialize(ByteBuffer.wrap(bytes, offset, size));
+    }
 
-        // Decode kv size
-        int kvSize = Bytes.toInt(Bytes.slice(bytes, pos, BlockWriter.KV_SIZE_LEN));
-        pos += BlockWriter.KV_SIZE_LEN;
+    /**
+     * Deserialize a block from the whole content of the specified buffer, which is read in
+     * place and must not be modified afterwards.
+     *
+     * @param buf the buffer holding exactly one block
+     * @return the block reader
+     * @throws IOException if the block is invalid
+     */
+    public static BlockReader deserialize(ByteBuffer buf) throws IOException {
+        ByteBuffer block = buf.slice();
+        int size = block.remaining();
 
-        // Decode kv
-        for (int i = 0; i < kvSize; i++) {
-            KeyValue kv = KeyValue.deserialize(bytes, offset + pos);
-            kvBuf.add(kv);
-            crc32.update(bytes, offset + pos, kv.getSerializeSize());
-            pos += kv.getSerializeSize();
+        int minSize = BlockWriter.KV_SIZE_LEN + BlockWriter.RESTART_COUNT_LEN + BlockWriter.CHECKSUM_LEN;
+        if (size < minSize) {
+            throw new IOException("size(" + size + ") should be at least " + minSize);
         }
 
-        // Decode checksum
-        int checksum = Bytes.toInt(Bytes.slice(bytes, offset + pos, BlockWriter.CHECKSUM_LEN));
-        pos += BlockWriter.CHECKSUM_LEN;
+        // Decode kv size, restart count and checksum
+        int kvSize = block.getInt(0);
+        int checksumPos = size - BlockWriter.CHECKSUM_LEN;
+        int restartCountPos = checksumPos - BlockWriter.RESTART_COUNT_LEN;
+        int restartCount = block.getInt(restartCountPos);
+        int checksum = block.getInt(checksumPos);
 
-        int calChecksum = (int) (crc32.getValue() & 0xFFFFFFFF);
+        int calChecksum = checksum(block, BlockWriter.KV_SIZE_LEN, checksumPos - BlockWriter.KV_SIZE_LEN);
         if (calChecksum != checksum) {
-            throw new IOException("checksum(" + checksum + ") is not equal to expected checksum(" + checksum + ")");
+            throw new IOException("checksum(" + calChecksum + ") is not equal to expected checksum(" + checksum + ")");
         }
-        if (pos != size) {
-            throw new IOException("pos(" + pos + ") should be equal to size(" + size + ")");
+
+        // Decode restart points
+        int endOffset = restartCountPos - restartCount * BlockWriter.RESTART_LEN;
+        if (restartCount < 0 || endOffset < BlockWriter.KV_SIZE_LEN || (kvSize > 0) != (restartCount > 0)) {
+            throw new IOException("restart count(" + restartCount + ") mismatches kv size(" + kvSize + ")");
         }
+        int[] restarts = new int[restartCount];
+        for (int i = 0; i < restartCount; i++) {
+            restarts[i] = block.getInt(endOffset + i * BlockWriter.RESTART_LEN);
+            if (restarts[i] < BlockWriter.KV_SIZE_LEN || restarts[i] >= endOffset) {
+                throw new IOException("restart point(" + restarts[i] + ") is out of kv range");
+            }
+        }
+
+        return new BlockReader(block, kvSize, restarts, endOffset);
+    }
 
-        return new BlockReader(kvBuf);
+    /**
+     * Checksum a region of the buffer in place, whether it's a heap or a direct buffer.
+     */
+    private static int checksum(ByteBuffer buf, int offset, int length) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        dup.limit(offset + length);
+        CRC32 crc32 = new CRC32();
+        crc32.update(dup);
+        return (int) crc32.getValue();
     }
 
 }
@@ -1,6 +1,7 @@
 package top.parak.minibase.storage;
 
 import top.parak.minibase.KeyValue;
+import top.parak.minibase.PrefixExtractor;
 import top.parak.minibase.toolkit.BloomFilter;
 import top.parak.minibase.toolkit.Bytes;
 
@@ -14,6 +15,20 @@ import java.util.zip.Checksum;
 /**
  * Block writer.
  *
+ * <p>Encode block structure</p>
+ * <pre>
+ *     +----------+-----+-----+-----------+-----+-----------+---------------+----------+
+ *     | kv count | kv1 | ... | restart 1 | ... | restart r | restart count | checksum |
+ *     +----------+-----+-----+-----------+-----+-----------+---------------+----------+
+ *     |    4     |     |     |     4     |     |     4     |       4       |    4     |
+ *     +----------+-----+-----+-----------+-----+-----------+---------------+----------+
+ * </pre>
+ *
+ * <p>A restart point is the offset in the block of every {@link #RESTART_INTERVAL}-th
+ * KeyValue, so a reader can binary-search the restart points, and only decode a short
+ * run of KeyValues to seek. The checksum covers everything between the kv count and
+ * itself.</p>
+ *
  * @author Khighness
  * @since 2023-08-03
  */
@@ -21,19 +36,28 @@ public class BlockWriter {
 
     public static final int KV_SIZE_LEN = 4;
     public static final int CHECKSUM_LEN = 4;
-
-    private int            totalSize;
-    private List<KeyValue> kvBuf;
-    private BloomFilter    bloomFilter;
-    private Checksum       crc32;
-    private KeyValue       lastKV;
-    private int            kvCount;
+    public static final int RESTART_LEN = 4;
+    public static final int RESTART_COUNT_LEN = 4;
+    public static final int RESTART_INTERVAL = 16;
+
+    private int             totalSize;
+    private List<KeyValue>  kvBuf;
+    private List<Integer>   restarts;
+    private BloomFilter     bloomFilter;
+    private PrefixCollector prefixes;
+    private KeyValue        lastKV;
+    private int             kvCount;
 
     public BlockWriter() {
+        this(null);
+    }
+
+    public BlockWriter(PrefixExtractor prefixExtractor) {
+        prefixes = prefixExtractor == null ? null : new PrefixCollector(prefixExtractor);
         totalSize = 0;
         kvBuf = new ArrayList<>();
+        restarts = new ArrayList<>();
         bloomFilter = new BloomFilter(DiskStore.BLOOM_FILTER_HASH_COUNT, DiskStore.BLOOM_FILTER_BITS_PER_KEY);
-        crc32 = new CRC32();
     }
 
     public int getTotalSize() {
@@ -44,10 +68,6 @@ public class BlockWriter {
         return kvBuf;
     }
 
-    public int getChecksum() {
-        return (int) crc32.getValue();
-    }
-
     public byte[] getBloomFilter() {
         byte[][] bytes = new byte[kvBuf.size()][];
         for (int i = 0; i < kvBuf.size(); i++) {
@@ -56,6 +76,15 @@ public class BlockWriter {
         return bloomFilter.generate(bytes);
     }
 
+    /**
+     * Get the bloom filter of the distinct key prefixes in the block.
+     *
+     * @return the bloom filter, empty if there's no prefix extractor
+     */
+    public byte[] getPrefixBloomFilter() {
+        return prefixes == null ? Bytes.EMPTY_BYTES : prefixes.generateBloomFilter();
+    }
+
     public KeyValue getLastKV() {
         return lastKV;
     }
@@ -65,18 +94,24 @@ public class BlockWriter {
     }
 
     public int size() {
-        return KV_SIZE_LEN + totalSize + CHECKSUM_LEN;
+        return KV_SIZE_LEN + totalSize + RESTART_LEN * restarts.size() + RESTART_COUNT_LEN + CHECKSUM_LEN;
     }
 
     public void append(KeyValue kv) throws IOException {
+        // Update restart points
+        if (kvCount % RESTART_INTERVAL == 0) {
+            restarts.add(KV_SIZE_LEN + totalSize);
+        }
+
+        // Update key prefixes
+        if (prefixes != null) {
+            prefixes.add(kv.getKey());
+        }
+
         // Update key value buffer
         kvBuf.add(kv);
         lastKV = kv;
 
-        // Update checksum
-        byte[] buf = kv.serialize();
-        crc32.update(buf, 0, buf.length);
-
         totalSize += kv.getSerializeSize();
         kvCount++;
     }
@@ -97,8 +132,22 @@ public class BlockWriter {
             pos += kvBytes.length;
         }
 
+        // Append restart points
+        for (int restart : restarts) {
+            byte[] restartBytes = Bytes.toBytes(restart);
+            System.arraycopy(restartBytes, 0, bytes, pos, RESTART_LEN);
+            pos += RESTART_LEN;
+        }
+
+        // Append restart count
+        byte[] restartCount = Bytes.toBytes(restarts.size());
+        System.arraycopy(restartCount, 0, bytes, pos, restartCount.length);
+        pos += restartCount.length;
+
         // Append checksum
-        byte[] checkSum = Bytes.toBytes(getChecksum());
+        Checksum crc32 = new CRC32();
+        crc32.update(bytes, KV_SIZE_LEN, pos - KV_SIZE_LEN);
+        byte[] checkSum = Bytes.toBytes((int) crc32.getValue());
         System.arraycopy(checkSum, 0, bytes, pos, checkSum.length);
         pos += checkSum.length;
 
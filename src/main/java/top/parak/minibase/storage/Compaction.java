@@ -0,0 +1,38 @@
+package top.parak.minibase.storage;
+
+import java.util.List;
+
+/**
+ * Compaction.
+ *
+ * <p>Describes one compaction: the disk files to merge, the level of the output files, and
+ * the size at which a new output file is started.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class Compaction {
+
+    private final List<DiskFile> inputs;
+    private final int            outputLevel;
+    private final long           targetFileSize;
+
+    public Compaction(List<DiskFile> inputs, int outputLevel, long targetFileSize) {
+        this.inputs = inputs;
+        this.outputLevel = outputLevel;
+        this.targetFileSize = targetFileSize;
+    }
+
+    public List<DiskFile> getInputs() {
+        return inputs;
+    }
+
+    public int getOutputLevel() {
+        return outputLevel;
+    }
+
+    public long getTargetFileSize() {
+        return targetFileSize;
+    }
+
+}
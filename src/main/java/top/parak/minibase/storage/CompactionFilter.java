@@ -0,0 +1,30 @@
+package top.parak.minibase.storage;
+
+/**
+ * Compaction filter.
+ *
+ * <p>Called by the compactor on the newest version of each key still put, and on every older
+ * version kept for a snapshot, to keep, remove or rewrite its value. A removed KeyValue is
+ * replaced by a delete of the same sequence id, which shadows the older versions of the key
+ * until the compaction can drop it. Snapshots and reads see the filtered data once the
+ * compaction is done, so the filter should only remove what readers no longer care about.</p>
+ *
+ * <p>The sub-jobs of a compaction call the filter in parallel, so it must be thread-safe.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public interface CompactionFilter {
+
+    /**
+     * Filter a KeyValue put.
+     *
+     * @param level the level the compaction outputs to
+     * @param key   the key
+     * @param value the value
+     * @return the value itself to keep the KeyValue, a new value to rewrite it, or
+     *         {@code null} to remove it
+     */
+    byte[] filter(int level, byte[] key, byte[] value);
+
+}
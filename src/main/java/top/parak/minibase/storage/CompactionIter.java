@@ -0,0 +1,171 @@
+package top.parak.minibase.storage;
+
+import top.parak.minibase.Iter;
+import top.parak.minibase.KeyComparator;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.Op;
+
+import java.io.IOException;
+import java.util.NavigableSet;
+import java.util.function.Predicate;
+
+/**
+ * Compaction iterator.
+ *
+ * <p>Filters the merged stream of the files to compact, ordered by key ascending and sequence
+ * id descending, down to the versions somebody can still read: the newest version of each
+ * key, for every live snapshot, the newest version not newer than the snapshot, and all the
+ * versions newer than the newest live snapshot.</p>
+ *
+ * <p>A delete is dropped as well, together with all the older versions of its key, once no
+ * live snapshot is older than it and no file outside the compaction may hold an older
+ * version of its key, since nobody could tell the key from one that was never written.</p>
+ *
+ * <p>The puts kept are then passed through the {@link CompactionFilter}, if any, and a put the
+ * filter removes is turned into a delete of the same sequence id.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class CompactionIter implements Iter<KeyValue> {
+
+    private final Iter<KeyValue>      it;
+    private final NavigableSet<Long>  liveSequenceIds;
+    private final KeyComparator       comparator;
+    private final Predicate<KeyValue> mayHaveOlderVersions;
+    private CompactionFilter          filter;
+    private int                       outputLevel;
+
+    private KeyValue pendingKV;
+    private KeyValue currentKV;
+
+    /**
+     * The sequence id of the previous version of the key of {@link #currentKV}, the versions
+     * in between it and the version to check are visible to nobody.
+     */
+    private long prevSequenceId;
+
+    private long droppedCount;
+    private long droppedBytes;
+    private long droppedDeleteCount;
+
+    /**
+     * Create a compaction iterator which keeps all the deletes it can't prove obsolete.
+     */
+    public CompactionIter(Iter<KeyValue> it, NavigableSet<Long> liveSequenceIds, KeyComparator comparator) {
+        this(it, liveSequenceIds, comparator, kv -> true);
+    }
+
+    /**
+     * @param mayHaveOlderVersions tells whether a file outside the compaction may hold a version
+     *                             of the key of the delete older than the delete
+     */
+    public CompactionIter(Iter<KeyValue> it, NavigableSet<Long> liveSequenceIds, KeyComparator comparator,
+                          Predicate<KeyValue> mayHaveOlderVersions) {
+        this.it = it;
+        this.liveSequenceIds = liveSequenceIds;
+        this.comparator = comparator;
+        this.mayHaveOlderVersions = mayHaveOlderVersions;
+    }
+
+    /**
+     * Set the compaction filter.
+     *
+     * @param filter      the compaction filter, or {@code null} to keep all the puts
+     * @param outputLevel the level the compaction outputs to
+     */
+    public void setFilter(CompactionFilter filter, int outputLevel) {
+        this.filter = filter;
+        this.outputLevel = outputLevel;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getDroppedDeleteCount() {
+        return droppedDeleteCount;
+    }
+
+    private boolean isVisible(KeyValue kv) {
+        if (currentKV == null || currentKV.compareKey(kv, comparator) != 0) {
+            currentKV = kv;
+            prevSequenceId = kv.getSequenceId();
+            return true;
+        }
+        // Visible to the snapshot S iff kv.seqId <= S < prevSeqId. A version newer than all the
+        // live snapshots is kept too: the read point may have moved past it since they were
+        // taken, and a read pinned there would need it.
+        Long snapshot = liveSequenceIds.ceiling(kv.getSequenceId());
+        boolean visible = snapshot == null || snapshot < prevSequenceId;
+        prevSequenceId = kv.getSequenceId();
+        return visible;
+    }
+
+    /**
+     * Check whether the visible delete can go. With no snapshot older than the delete, every
+     * older version of its key in the compaction is visible to nobody and dropped too.
+     */
+    private boolean isObsoleteDelete(KeyValue kv) {
+        return kv.getOp() == Op.Delete
+                && liveSequenceIds.lower(kv.getSequenceId()) == null
+                && !mayHaveOlderVersions.test(kv);
+    }
+
+    private KeyValue applyFilter(KeyValue kv) {
+        if (filter == null || kv.getOp() != Op.Put) {
+            return kv;
+        }
+        byte[] value = kv.getValue();
+        byte[] filtered = filter.filter(outputLevel, kv.getKey(), value);
+        if (filtered == null) {
+            return KeyValue.createDelete(kv.getKey(), kv.getSequenceId());
+        }
+        return filtered == value ? kv : KeyValue.createPut(kv.getKey(), filtered, kv.getSequenceId());
+    }
+
+    private void advance() throws IOException {
+        while (pendingKV == null && it.hasNext()) {
+            KeyValue kv = it.next();
+            int size = kv.getSerializeSize();
+            boolean keep = isVisible(kv);
+            if (keep) {
+                kv = applyFilter(kv);
+                if (isObsoleteDelete(kv)) {
+                    droppedDeleteCount++;
+                    keep = false;
+                }
+            }
+            if (keep) {
+                pendingKV = kv;
+            } else {
+                droppedCount++;
+                droppedBytes += size;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        advance();
+        return pendingKV != null;
+    }
+
+    @Override
+    public KeyValue next() throws IOException {
+        advance();
+        KeyValue kv = pendingKV;
+        pendingKV = null;
+        return kv;
+    }
+
+    @Override
+    public void close() throws IOException {
+        it.close();
+    }
+
+}
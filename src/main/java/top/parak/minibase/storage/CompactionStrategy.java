@@ -0,0 +1,34 @@
+package top.parak.minibase.storage;
+
+import java.util.List;
+
+/**
+ * Compaction strategy.
+ *
+ * <p>Decides which disk files the compactor merges, and into which output files: the level
+ * of the outputs, and the size at which a new output file is started. The strategy is only
+ * called from the compactor thread, and sees all the disk files each time, so it may keep
+ * state between calls without locking.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public interface CompactionStrategy {
+
+    /**
+     * Pick the next compaction.
+     *
+     * @param diskFiles all the disk files
+     * @return the compaction, or {@code null} if there's nothing to compact
+     */
+    Compaction pick(List<DiskFile> diskFiles);
+
+    /**
+     * Pick a compaction of all the disk files, for a manual full compaction.
+     *
+     * @param diskFiles all the disk files
+     * @return the compaction
+     */
+    Compaction pickAll(List<DiskFile> diskFiles);
+
+}
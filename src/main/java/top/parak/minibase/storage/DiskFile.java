@@ -1,15 +1,41 @@
 package top.parak.minibase.storage;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.parak.minibase.KeyComparator;
 import top.parak.minibase.KeyValue;
+import top.parak.minibase.config.DiskFileReadMode;
+import top.parak.minibase.toolkit.BloomFilter;
+import top.parak.minibase.toolkit.ByteBuffers;
 import top.parak.minibase.toolkit.Bytes;
 import top.parak.minibase.toolkit.Requires;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
 import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Disk file.
@@ -19,52 +45,102 @@ import java.util.SortedSet;
  */
 public class DiskFile implements Closeable {
 
-    private String               fileName;
-    private RandomAccessFile     in;
-    private SortedSet<BlockMeta> blockMetaSet;
+    private static final Logger LOG = LoggerFactory.getLogger(DiskFile.class);
+
+    private static final AtomicLong FILE_ID_GENERATOR = new AtomicLong();
+
+    private final long              fileId = FILE_ID_GENERATOR.incrementAndGet();
+    private final BlockCache        blockCache;
+    private final DiskFileReadMode  readMode;
+    private final KeyComparator     keyComparator;
+    private final Executor          readaheadExecutor;
+    private final int               readaheadMaxBlocks;
+    private String                  fileName;
+    private FileChannel             channel;
+    private MappedByteBuffer        mapped;
+    private NavigableSet<BlockMeta> blockMetaSet;
+
+    /**
+     * One reference held by the file itself, and one by each open iterator and in-flight
+     * read, the file is closed and unmapped only once all of them are released.
+     */
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile boolean    archiveOnRelease = false;
 
     private long fileSize;
     private int  blockCount;
     private long blockIndexOffset;
     private long blockIndexSize;
+    private long fileMetaOffset;
+    private long fileMetaSize;
+
+    private long   kvCount;
+    private long   minSequenceId;
+    private long   maxSequenceId;
+    private byte[] smallestKey;
+    private byte[] largestKey;
+    private byte[] prefixBloomFilter;
+    private int    level;
+
+    public DiskFile() {
+        this(null, DiskFileReadMode.Read, KeyComparator.BYTEWISE, null, 0);
+    }
+
+    public DiskFile(BlockCache blockCache, DiskFileReadMode readMode, KeyComparator keyComparator,
+                    Executor readaheadExecutor, int readaheadMaxBlocks) {
+        this.blockCache = blockCache;
+        this.readMode = readMode;
+        this.keyComparator = keyComparator;
+        this.readaheadExecutor = readaheadExecutor;
+        this.readaheadMaxBlocks = readaheadExecutor == null ? 0 : readaheadMaxBlocks;
+    }
 
     public void open(String fileName) throws IOException {
         this.fileName = fileName;
 
         File file = new File(fileName);
-        in = new RandomAccessFile(file, "r");
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
 
         fileSize = file.length();
         Requires.requireTrue(fileSize > DiskFileWriter.TRAILER_SIZE);
-        in.seek(fileSize - DiskFileWriter.TRAILER_SIZE);
-
-        byte[] bytes = new byte[8];
-        Requires.requireTrue(in.read(bytes) == bytes.length);
-        blockCount = Bytes.toInt(bytes);
-
-        bytes = new byte[4];
-        Requires.requireTrue(in.read(bytes) == bytes.length);
-        blockIndexOffset = Bytes.toInt(bytes);
+        // A mapping is limited to 2GB, larger files fall back to file I/O.
+        if (readMode == DiskFileReadMode.Mmap && fileSize <= Integer.MAX_VALUE) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
 
-        bytes = new byte[8];
-        Requires.requireTrue(in.read(bytes) == bytes.length);
-        blockIndexSize = Bytes.toLong(bytes);
+        ByteBuffer trailer = read(fileSize - DiskFileWriter.TRAILER_SIZE, DiskFileWriter.TRAILER_SIZE);
+        Requires.requireTrue(fileSize == trailer.getLong());
+        blockCount = trailer.getInt();
+        blockIndexOffset = trailer.getLong();
+        blockIndexSize = trailer.getLong();
+        fileMetaOffset = trailer.getLong();
+        fileMetaSize = trailer.getLong();
+        Requires.requireTrue(DiskFileWriter.DISK_FILE_MAGIC == trailer.getLong());
 
-        bytes = new byte[8];
-        Requires.requireTrue(in.read(bytes) == bytes.length);
-        System.out.println(Bytes.toLong(bytes));
-        Requires.requireTrue(DiskFileWriter.DISK_FILE_MAGIC == Bytes.toLong(bytes));
+        ByteBuffer fileMeta = read(fileMetaOffset, (int) fileMetaSize);
+        kvCount = fileMeta.getLong();
+        minSequenceId = fileMeta.getLong();
+        maxSequenceId = fileMeta.getLong();
+        smallestKey = new byte[fileMeta.getInt()];
+        fileMeta.get(smallestKey);
+        largestKey = new byte[fileMeta.getInt()];
+        fileMeta.get(largestKey);
+        prefixBloomFilter = new byte[fileMeta.getInt()];
+        fileMeta.get(prefixBloomFilter);
+        level = fileMeta.getInt();
 
-        bytes = new byte[(int) blockIndexSize];
-        in.seek(blockIndexOffset);
-        Requires.requireTrue(in.read(bytes) == blockIndexSize);
+        ByteBuffer index = read(blockIndexOffset, (int) blockIndexSize);
+        byte[] bytes = new byte[(int) blockIndexSize];
+        index.get(bytes);
 
+        blockMetaSet = new TreeSet<>((a, b) -> a.getLastKV().compareTo(b.getLastKV(), keyComparator));
         int offset = 0;
-        do {
+        while (offset < bytes.length) {
             BlockMeta blockMeta = BlockMeta.deserialize(bytes, offset);
             blockMetaSet.add(blockMeta);
             offset += blockMeta.getSerializeSize();
-        } while (offset < bytes.length);
+        }
 
         Requires.requireTrue(blockMetaSet.size() == blockCount);
     }
@@ -73,52 +149,484 @@ public class DiskFile implements Closeable {
         return fileName;
     }
 
+    /**
+     * Get the last key of every block in order, as the candidate points to split the key
+     * range of this file at.
+     *
+     * @return the last keys of the blocks
+     */
+    public List<byte[]> getBlockLastKeys() {
+        List<byte[]> keys = new ArrayList<>(blockMetaSet.size());
+        for (BlockMeta blockMeta : blockMetaSet) {
+            keys.add(blockMeta.getLastKV().getKey());
+        }
+        return keys;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getKvCount() {
+        return kvCount;
+    }
+
+    public long getMinSequenceId() {
+        return minSequenceId;
+    }
+
+    public long getMaxSequenceId() {
+        return maxSequenceId;
+    }
+
+    public byte[] getSmallestKey() {
+        return smallestKey;
+    }
+
+    public byte[] getLargestKey() {
+        return largestKey;
+    }
+
+    /**
+     * Check whether the key range of this file covers the specified key.
+     *
+     * @param key the byte array of the key
+     * @return false if the key must not be in this file
+     */
+    public boolean mayContain(byte[] key) {
+        return kvCount > 0
+                && keyComparator.compare(key, smallestKey) >= 0
+                && keyComparator.compare(key, largestKey) <= 0;
+    }
+
+    /**
+     * Check whether the key range of this file overlaps the range [startKey, endKey),
+     * where an empty key leaves that side unbounded.
+     *
+     * @param startKey the start key (inclusive)
+     * @param endKey   the end key (exclusive)
+     * @return false if no key of the range can be in this file
+     */
+    public boolean overlaps(byte[] startKey, byte[] endKey) {
+        return kvCount > 0
+                && (startKey.length == 0 || keyComparator.compare(largestKey, startKey) >= 0)
+                && (endKey.length == 0 || keyComparator.compare(smallestKey, endKey) < 0);
+    }
+
+    /**
+     * Check whether this file may hold keys starting with the specified prefix, by the key
+     * range of the file, and by the prefix bloom filter of the file if asked to.
+     *
+     * @param prefix    the key prefix
+     * @param useFilter whether the prefix is one extracted by the prefix extractor, so that
+     *                  the prefix bloom filter applies
+     * @return false if no key starting with the prefix can be in this file
+     */
+    public boolean mayContainPrefix(byte[] prefix, boolean useFilter) {
+        if (kvCount == 0 || keyComparator.compare(largestKey, prefix) < 0 || isPastPrefix(smallestKey, prefix)) {
+            return false;
+        }
+        return !useFilter || mayContainPrefix(prefixBloomFilter, prefix);
+    }
+
+    /**
+     * Check whether the key is ordered after all the keys starting with the prefix.
+     */
+    private boolean isPastPrefix(byte[] key, byte[] prefix) {
+        return keyComparator.compare(key, prefix) > 0 && !Bytes.startsWith(key, prefix);
+    }
+
+    private static boolean mayContainPrefix(byte[] prefixBloomFilter, byte[] prefix) {
+        // An empty filter means the file was written without a prefix extractor.
+        return prefixBloomFilter.length == 0
+                || new BloomFilter(DiskStore.BLOOM_FILTER_HASH_COUNT, prefixBloomFilter).contains(prefix);
+    }
+
+    /**
+     * Check whether the key ranges of this file and the specified file overlap.
+     *
+     * @param that the other disk file
+     * @return false if no key can be in both files
+     */
+    public boolean overlaps(DiskFile that) {
+        return this.kvCount > 0 && that.kvCount > 0
+                && keyComparator.compare(this.largestKey, that.smallestKey) >= 0
+                && keyComparator.compare(that.largestKey, this.smallestKey) >= 0;
+    }
+
+    /**
+     * Read the specified range of the file, as a slice of the mapping in mmap mode,
+     * or as a fresh heap buffer otherwise. Reads are positional and never touch the
+     * channel position, so any number of threads can read the same file in parallel.
+     */
+    private ByteBuffer read(long position, int size) throws IOException {
+        if (mapped != null) {
+            ByteBuffer dup = mapped.duplicate();
+            dup.position((int) position);
+            dup.limit((int) position + size);
+            return dup.slice();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new EOFException("Unexpected end of disk file " + fileName + " at " + (position + buf.position()));
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Take a reference to the file, which keeps it open until {@link #release()}.
+     *
+     * @throws IOException if the file has been closed
+     */
+    void acquire() throws IOException {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IOException("Disk file " + fileName + " has been closed");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Release a reference taken by {@link #acquire()}, the last one evicts the blocks of
+     * the file from the block cache, closes the file, and archives it if asked to by
+     * {@link #archive()}.
+     *
+     * @throws IOException if the file fails to close
+     */
+    void release() throws IOException {
+        if (refCount.decrementAndGet() == 0) {
+            if (blockCache != null) {
+                blockCache.evictFile(fileId);
+            }
+            if (mapped != null && !ByteBuffers.free(mapped)) {
+                LOG.warn("Failed to unmap disk file {}, leave it to GC", fileName);
+            }
+            mapped = null;
+            if (channel != null) {
+                channel.close();
+            }
+            if (archiveOnRelease) {
+                File file = new File(fileName);
+                File archiveFile = new File(fileName + DiskStore.FILE_NAME_ARCHIVE_SUFFIX);
+                if (!file.renameTo(archiveFile)) {
+                    LOG.error("Failed to rename disk file {} to archive file {}", file.getName(), archiveFile.getName());
+                }
+            }
+        }
+    }
+
     private BlockReader load(BlockMeta meta) throws IOException {
-        in.seek(meta.getBlockOffset());
+        if (blockCache != null) {
+            BlockReader reader = blockCache.get(fileId, meta.getBlockOffset());
+            if (reader != null) {
+                return reader;
+            }
+        }
+
+        acquire();
+        try {
+            // A block of a mapped file is read in place, and only copied to be cached, since the
+            // cache outlives the mapping.
+            BlockReader reader = BlockReader.deserialize(read(meta.getBlockOffset(), (int) meta.getBlockSize()));
+            // Cache under the reference, which the eviction of the file on the last release
+            // waits for, and skip the files already compacted away.
+            if (blockCache != null && !closed.get()) {
+                reader = reader.detach();
+                blockCache.put(fileId, meta.getBlockOffset(), reader, meta.getBlockSize());
+            }
+            return reader;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Get the newest version of the specified key not newer than the specified sequence id.
+     *
+     * <p>Only the single block which can hold that version is checked, and it's not even
+     * loaded if its bloom filter rules the key out.</p>
+     *
+     * @param key        the byte array of the key
+     * @param sequenceId the largest visible sequence id
+     * @return the KeyValue, or {@code null} if the key is not in this file
+     * @throws IOException if an IOException occurs
+     */
+    public KeyValue get(byte[] key, long sequenceId) throws IOException {
+        if (sequenceId < minSequenceId || !mayContain(key)) {
+            return null;
+        }
+        KeyValue target = KeyValue.createDelete(key, sequenceId);
+        BlockMeta blockMeta = findBlock(target);
+        if (blockMeta == null) {
+            return null;
+        }
+        acquire();
+        try {
+            return find(load(blockMeta), target);
+        } finally {
+            release();
+        }
+    }
 
-        byte[] bytes = new byte[(int) meta.getBlockSize()];
-        Requires.requireTrue(in.read(bytes) == bytes.length);
-        return BlockReader.deserialize(bytes, 0, bytes.length);
+    /**
+     * Get the newest versions of the specified keys not newer than the specified sequence id.
+     * Keys falling into the same block share one load of the block, so the keys should be
+     * sorted to make the most of it.
+     *
+     * @param keys       the byte arrays of the keys
+     * @param sequenceId the largest visible sequence id
+     * @return the KeyValues in the order of the keys, {@code null} for the keys not in this file
+     * @throws IOException if an IOException occurs
+     */
+    public KeyValue[] multiGet(byte[][] keys, long sequenceId) throws IOException {
+        KeyValue[] result = new KeyValue[keys.length];
+        if (sequenceId < minSequenceId) {
+            return result;
+        }
+        BlockMeta loadedMeta = null;
+        BlockReader loadedReader = null;
+        acquire();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                if (!mayContain(keys[i])) {
+                    continue;
+                }
+                KeyValue target = KeyValue.createDelete(keys[i], sequenceId);
+                BlockMeta blockMeta = findBlock(target);
+                if (blockMeta == null) {
+                    continue;
+                }
+                if (blockMeta != loadedMeta) {
+                    loadedReader = load(blockMeta);
+                    loadedMeta = blockMeta;
+                }
+                result[i] = find(loadedReader, target);
+            }
+        } finally {
+            release();
+        }
+        return result;
     }
 
+    /**
+     * Find the single block which can hold the target, unless its bloom filter rules the key out.
+     */
+    private BlockMeta findBlock(KeyValue target) {
+        SortedSet<BlockMeta> tailSet = blockMetaSet.tailSet(new BlockMeta(target, 0, 0, Bytes.EMPTY_BYTES));
+        if (tailSet.isEmpty()) {
+            return null;
+        }
+        BlockMeta blockMeta = tailSet.first();
+        if (!new BloomFilter(DiskStore.BLOOM_FILTER_HASH_COUNT, blockMeta.getBloomFilter()).contains(target.getKey())) {
+            return null;
+        }
+        return blockMeta;
+    }
+
+    private KeyValue find(BlockReader reader, KeyValue target) throws IOException {
+        int offset = reader.seek(target, keyComparator);
+        if (offset >= reader.getEndOffset()) {
+            return null;
+        }
+        KeyValue kv = reader.read(offset);
+        return kv.compareKey(target, keyComparator) == 0 ? kv : null;
+    }
+
+    /**
+     * Drop the reference held by the file itself. The file stays readable by the iterators
+     * and reads still holding references, and is closed once they're all done.
+     *
+     * @throws IOException if the file fails to close
+     */
     @Override
     public void close() throws IOException {
-        if (in != null) {
-            in.close();
+        if (!closed.compareAndSet(false, true)) {
+            return;
         }
+        release();
+    }
+
+    /**
+     * Close the file once it has been compacted away, and rename it to an archive file
+     * when the last reader releases it.
+     *
+     * @throws IOException if the file fails to close
+     */
+    public void archive() throws IOException {
+        archiveOnRelease = true;
+        close();
+    }
+
+    /**
+     * Create an iterator over the whole file, which holds a reference to the file until
+     * it's closed.
+     *
+     * @return the iterator
+     * @throws IOException if the file has been closed
+     */
+    public SeekIter<KeyValue> iterator() throws IOException {
+        return new InternalSeekIterator(null, false);
     }
 
-    public SeekIter<KeyValue> iterator() {
-        return new InternalSeekIterator();
+    /**
+     * Create an iterator for a prefix scan, which stops loading blocks once past the keys
+     * starting with the prefix, and skips the blocks whose prefix bloom filters rule the
+     * prefix out if asked to. So it must be sought to the prefix, and may return KeyValues
+     * not starting with the prefix, which are up to the caller to drop.
+     *
+     * @param prefix    the key prefix
+     * @param useFilter whether the prefix bloom filters of the blocks apply
+     * @return the iterator
+     * @throws IOException if the file has been closed
+     */
+    public SeekIter<KeyValue> prefixIterator(byte[] prefix, boolean useFilter) throws IOException {
+        return new InternalSeekIterator(prefix, useFilter);
     }
 
+    /**
+     * Iterator over all the blocks in order.
+     *
+     * <p>Once it has moved on to the next block {@link #READAHEAD_TRIGGER_BLOCKS} times in a
+     * row without seeking, the iterator is regarded as sequential, and starts prefetching
+     * the following blocks on the readahead executor, so that the I/O of the next blocks
+     * overlaps with the consumption of the current one. The depth starts at one block and
+     * doubles with every block consumed, up to the configured max; a seek resets it.</p>
+     *
+     * <p>A backward seek walks the blocks in descending order instead, prefetched the same
+     * way. Entries in a block can only be decoded forwards, so the offsets of a block are
+     * collected once it's loaded, and then walked backwards.</p>
+     *
+     * <p>The iterator holds a reference to the file from its creation until it's closed, so
+     * that a compaction archiving the file never closes it under the iterator.</p>
+     */
     private class InternalSeekIterator implements SeekIter<KeyValue> {
 
-        private int currentKVIndex = 0;
+        private static final int READAHEAD_TRIGGER_BLOCKS = 2;
+
+        private int currentOffset = 0;
         private BlockReader currentReader;
         private Iterator<BlockMeta> blockMetaIter;
+        private final Deque<Future<BlockReader>> readahead = new ArrayDeque<>();
+        private int sequentialBlocks = 0;
+        private final byte[] prefix;
+        private final boolean usePrefixFilter;
+        private boolean reverse = false;
+        private int[] reverseOffsets;
+        private int reverseIndex = 0;
+        private boolean released = false;
 
-        public InternalSeekIterator() {
+        public InternalSeekIterator(byte[] prefix, boolean usePrefixFilter) throws IOException {
+            acquire();
             this.currentReader = null;
             this.blockMetaIter = blockMetaSet.iterator();
+            this.prefix = prefix;
+            this.usePrefixFilter = usePrefixFilter;
+        }
+
+        /**
+         * Get the next block to read, skipping the ones without the prefix of a prefix scan.
+         */
+        private BlockMeta nextBlockMeta() {
+            while (blockMetaIter.hasNext()) {
+                BlockMeta meta = blockMetaIter.next();
+                if (prefix == null) {
+                    return meta;
+                }
+                if (isPastPrefix(meta.getLastKV().getKey(), prefix)) {
+                    // This block may still start with the prefix, but none of the following.
+                    blockMetaIter = Collections.emptyIterator();
+                }
+                if (!usePrefixFilter || mayContainPrefix(meta.getPrefixBloomFilter(), prefix)) {
+                    return meta;
+                }
+            }
+            return null;
         }
 
         private boolean nextBlockReader() throws IOException {
-            if (blockMetaIter.hasNext()) {
-                currentReader = load(blockMetaIter.next());
-                currentKVIndex = 0;
-                return true;
+            Future<BlockReader> prefetched = readahead.poll();
+            BlockMeta meta;
+            if (prefetched != null) {
+                currentReader = await(prefetched);
+            } else if ((meta = nextBlockMeta()) != null) {
+                currentReader = load(meta);
             } else {
                 return false;
             }
+            if (reverse) {
+                reverseOffsets = currentReader.offsetsBefore(currentReader.getEndOffset());
+                reverseIndex = reverseOffsets.length;
+            } else {
+                currentOffset = currentReader.getFirstOffset();
+            }
+            sequentialBlocks++;
+            prefetch();
+            return true;
+        }
+
+        private void prefetch() {
+            if (readaheadMaxBlocks <= 0 || sequentialBlocks < READAHEAD_TRIGGER_BLOCKS) {
+                return;
+            }
+            int shift = Math.min(sequentialBlocks - READAHEAD_TRIGGER_BLOCKS, 30);
+            int depth = Math.min(readaheadMaxBlocks, 1 << shift);
+            BlockMeta meta;
+            while (readahead.size() < depth && (meta = nextBlockMeta()) != null) {
+                BlockMeta blockMeta = meta;
+                FutureTask<BlockReader> task = new FutureTask<>(() -> load(blockMeta));
+                try {
+                    readaheadExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // The store is closing, load it in place.
+                    task.run();
+                }
+                readahead.add(task);
+            }
+        }
+
+        private BlockReader await(Future<BlockReader> future) throws IOException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Readahead of disk file " + fileName + " failed", cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for readahead of disk file " + fileName);
+            }
+        }
+
+        private void cancelReadahead() {
+            for (Future<BlockReader> future : readahead) {
+                future.cancel(false);
+            }
+            readahead.clear();
         }
 
         @Override
         public boolean hasNext() throws IOException {
+            if (reverse) {
+                return false;
+            }
             if (currentReader == null) {
                 return nextBlockReader();
             } else {
-                if (currentKVIndex < currentReader.getKvBuf().size()) {
+                if (currentOffset < currentReader.getEndOffset()) {
                     return true;
                 } else {
                     return nextBlockReader();
@@ -128,30 +636,92 @@ public class DiskFile implements Closeable {
 
         @Override
         public KeyValue next() throws IOException {
-            return currentReader.getKvBuf().get(currentKVIndex++);
+            KeyValue kv = currentReader.read(currentOffset);
+            currentOffset += kv.getSerializeSize();
+            return kv;
         }
 
         @Override
         public void seekTo(KeyValue target) throws IOException {
+            cancelReadahead();
+            reverse = false;
             blockMetaIter = blockMetaSet.tailSet(new BlockMeta(target, 0, 0, Bytes.EMPTY_BYTES)).iterator();
             currentReader = null;
-            if (blockMetaIter.hasNext()) {
-                BlockReader reader = load(blockMetaIter.next());
-                currentKVIndex = 0;
-                while (currentKVIndex < currentReader.getKvBuf().size()) {
-                    KeyValue currKV = currentReader.getKvBuf().get(currentKVIndex);
-                    if (currKV.compareTo(target) >= 0) {
-                        break;
-                    }
-                    currentKVIndex++;
-                }
-                if (currentKVIndex >= currentReader.getKvBuf().size()) {
+            sequentialBlocks = 0;
+            BlockMeta meta = nextBlockMeta();
+            if (meta != null) {
+                currentReader = load(meta);
+                sequentialBlocks = 1;
+                currentOffset = currentReader.seek(target, keyComparator);
+                if (currentOffset >= currentReader.getEndOffset()) {
                     throw new IOException("Data block mis-encoded, lastKV of the currentReader >= kv, but " +
                             "we found all kv < target");
                 }
             }
         }
 
+        @Override
+        public void seekToLast() throws IOException {
+            cancelReadahead();
+            reverse = true;
+            blockMetaIter = blockMetaSet.descendingIterator();
+            currentReader = null;
+            reverseIndex = 0;
+            sequentialBlocks = 0;
+        }
+
+        @Override
+        public void seekForPrev(KeyValue target) throws IOException {
+            cancelReadahead();
+            reverse = true;
+            // The first block whose last KeyValue is not less than the target holds the
+            // largest KeyValues less than the target, and all the blocks before it are less.
+            SortedSet<BlockMeta> tailSet = blockMetaSet.tailSet(new BlockMeta(target, 0, 0, Bytes.EMPTY_BYTES));
+            currentReader = null;
+            reverseIndex = 0;
+            sequentialBlocks = 0;
+            if (tailSet.isEmpty()) {
+                blockMetaIter = blockMetaSet.descendingIterator();
+                return;
+            }
+            BlockMeta meta = tailSet.first();
+            blockMetaIter = blockMetaSet.headSet(meta, false).descendingIterator();
+            currentReader = load(meta);
+            sequentialBlocks = 1;
+            reverseOffsets = currentReader.offsetsBefore(currentReader.seek(target, keyComparator));
+            reverseIndex = reverseOffsets.length;
+        }
+
+        @Override
+        public boolean hasPrev() throws IOException {
+            if (!reverse) {
+                return false;
+            }
+            while (currentReader == null || reverseIndex == 0) {
+                if (!nextBlockReader()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public KeyValue prev() throws IOException {
+            return currentReader.read(reverseOffsets[--reverseIndex]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released) {
+                return;
+            }
+            released = true;
+            cancelReadahead();
+            currentReader = null;
+            blockMetaIter = Collections.emptyIterator();
+            release();
+        }
+
     }
 
 }
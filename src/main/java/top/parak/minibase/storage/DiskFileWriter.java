@@ -1,6 +1,7 @@
 package top.parak.minibase.storage;
 
 import top.parak.minibase.KeyValue;
+import top.parak.minibase.PrefixExtractor;
 import top.parak.minibase.toolkit.Bytes;
 
 import java.io.Closeable;
@@ -8,10 +9,24 @@ import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Disk file writer.
  *
+ * <p>A disk file consists of the data blocks, the block index, the file meta and the
+ * trailer. The file meta records the number of KeyValues, the min and max sequence id,
+ * the smallest and largest key, and the bloom filter of the key prefixes, which is empty
+ * without a prefix extractor, so that readers can skip the whole file. It also records the
+ * compaction level of the file.</p>
+ * <pre>
+ *     +----------+---------+---------+-----------+-------------+-------------+------------+------------+-----------+-------+
+ *     | kv count | min seq | max seq | s-key len | smallest key| l-key len   | largest key| p-bf len   | prefix bf | level |
+ *     +----------+---------+---------+-----------+-------------+-------------+------------+------------+-----------+-------+
+ *     |    8     |    8    |    8    |     4     |             |      4      |            |     4      |           |   4   |
+ *     +----------+---------+---------+-----------+-------------+-------------+------------+------------+-----------+-------+
+ * </pre>
+ *
  * @author Khighness
  * @since 2023-08-04
  */
@@ -25,13 +40,18 @@ public class DiskFileWriter implements Closeable {
      *     <li>{@link DiskFileWriter#blockCount}: 4B</li>
      *     <li>{@link DiskFileWriter#blockIndexOffset}: 8B</li>
      *     <li>{@link DiskFileWriter#blockIndexSize}: 8B</li>
+     *     <li>{@link DiskFileWriter#fileMetaOffset}: 8B</li>
+     *     <li>{@link DiskFileWriter#fileMetaSize}: 8B</li>
      *     <li>{@link DiskFileWriter#DISK_FILE_MAGIC}: 8B</li>
      * </ul>
      */
-    public static final int  TRAILER_SIZE = 8 + 4 + 8 + 8 + 8;
+    public static final int  TRAILER_SIZE = 8 + 4 + 8 + 8 + 8 + 8 + 8;
     public static final long DISK_FILE_MAGIC = 0xC09111002L;
 
     private String           fileName;
+    private PrefixExtractor  prefixExtractor;
+    private PrefixCollector  prefixes;
+    private int              level;
     private FileOutputStream out;
     private long             currentOffset;
     private BlockIndexWriter indexWriter;
@@ -41,9 +61,28 @@ public class DiskFileWriter implements Closeable {
     private int              blockCount = 0;
     private long             blockIndexOffset = 0;
     private long             blockIndexSize = 0;
+    private long             fileMetaOffset = 0;
+    private long             fileMetaSize = 0;
+
+    private long             kvCount = 0;
+    private KeyValue         firstKV;
+    private KeyValue         lastKV;
+    private long             minSequenceId = Long.MAX_VALUE;
+    private long             maxSequenceId = 0;
 
     public DiskFileWriter(String fileName) throws IOException {
+        this(fileName, null);
+    }
+
+    public DiskFileWriter(String fileName, PrefixExtractor prefixExtractor) throws IOException {
+        this(fileName, prefixExtractor, 0);
+    }
+
+    public DiskFileWriter(String fileName, PrefixExtractor prefixExtractor, int level) throws IOException {
         this.fileName = fileName;
+        this.level = level;
+        this.prefixExtractor = prefixExtractor;
+        this.prefixes = prefixExtractor == null ? null : new PrefixCollector(prefixExtractor);
 
         File file = new File(this.fileName);
         file.createNewFile();
@@ -51,18 +90,19 @@ public class DiskFileWriter implements Closeable {
         out = new FileOutputStream(file, true);
         currentOffset = 0;
         indexWriter = new BlockIndexWriter();
-        currentWriter = new BlockWriter();
+        currentWriter = new BlockWriter(prefixExtractor);
     }
 
     private void switchNextBlockWriter() throws IOException {
         byte[] buf = currentWriter.serialize();
         out.write(buf);
-        indexWriter.append(currentWriter.getLastKV(), currentOffset, buf.length, currentWriter.getBloomFilter());
+        indexWriter.append(currentWriter.getLastKV(), currentOffset, buf.length,
+                currentWriter.getBloomFilter(), currentWriter.getPrefixBloomFilter());
 
         currentOffset += buf.length;
         blockCount += 1;
 
-        currentWriter = new BlockWriter();
+        currentWriter = new BlockWriter(prefixExtractor);
     }
 
     public void append(KeyValue kv) throws IOException {
@@ -70,17 +110,38 @@ public class DiskFileWriter implements Closeable {
             return;
         }
 
-        int kvSize = kv.getSerializeSize() + BlockWriter.KV_SIZE_LEN + BlockWriter.CHECKSUM_LEN;
+        int kvSize = kv.getSerializeSize() + BlockWriter.KV_SIZE_LEN + BlockWriter.RESTART_LEN
+                + BlockWriter.RESTART_COUNT_LEN + BlockWriter.CHECKSUM_LEN;
         if (kvSize >= BLOCK_SIZE_UP_LIMIT) {
             throw new IOException("KeyValue size(" + kvSize +  ") exceeds block limit(" + BLOCK_SIZE_UP_LIMIT + ")");
         }
 
         if (currentWriter.getKvCount() > 0
-                && kv.getSerializeSize() + currentWriter.size() >= BLOCK_SIZE_UP_LIMIT) {
+                && kv.getSerializeSize() + BlockWriter.RESTART_LEN + currentWriter.size() >= BLOCK_SIZE_UP_LIMIT) {
             switchNextBlockWriter();
         }
 
         currentWriter.append(kv);
+
+        if (firstKV == null) {
+            firstKV = kv;
+        }
+        lastKV = kv;
+        if (prefixes != null) {
+            prefixes.add(kv.getKey());
+        }
+        kvCount++;
+        minSequenceId = Math.min(minSequenceId, kv.getSequenceId());
+        maxSequenceId = Math.max(maxSequenceId, kv.getSequenceId());
+    }
+
+    /**
+     * Get the size of the data written so far, including the pending block.
+     *
+     * @return the size in bytes
+     */
+    public long getDataSize() {
+        return currentOffset + (currentWriter.getKvCount() > 0 ? currentWriter.size() : 0);
     }
 
     public void appendIndex() throws IOException {
@@ -97,7 +158,33 @@ public class DiskFileWriter implements Closeable {
         currentOffset += buf.length;
     }
 
+    private byte[] serializeFileMeta() {
+        byte[] smallestKey = firstKV == null ? Bytes.EMPTY_BYTES : firstKV.getKey();
+        byte[] largestKey = lastKV == null ? Bytes.EMPTY_BYTES : lastKV.getKey();
+        byte[] prefixBloomFilter = prefixes == null ? Bytes.EMPTY_BYTES : prefixes.generateBloomFilter();
+        ByteBuffer buf = ByteBuffer.allocate(8 + 8 + 8 + 4 + smallestKey.length + 4 + largestKey.length
+                + 4 + prefixBloomFilter.length + 4);
+        buf.putLong(kvCount);
+        buf.putLong(kvCount == 0 ? 0 : minSequenceId);
+        buf.putLong(maxSequenceId);
+        buf.putInt(smallestKey.length);
+        buf.put(smallestKey);
+        buf.putInt(largestKey.length);
+        buf.put(largestKey);
+        buf.putInt(prefixBloomFilter.length);
+        buf.put(prefixBloomFilter);
+        buf.putInt(level);
+        return buf.array();
+    }
+
     public void appendTrailer() throws IOException {
+        // File meta
+        byte[] fileMeta = serializeFileMeta();
+        fileMetaOffset = currentOffset;
+        fileMetaSize = fileMeta.length;
+        out.write(fileMeta);
+        currentOffset += fileMeta.length;
+
         fileSize = currentOffset + TRAILER_SIZE;
 
         // fileSize
@@ -116,6 +203,14 @@ public class DiskFileWriter implements Closeable {
         bytes = Bytes.toBytes(blockIndexSize);
         out.write(bytes);
 
+        // fileMetaOffset
+        bytes = Bytes.toBytes(fileMetaOffset);
+        out.write(bytes);
+
+        // fileMetaSize
+        bytes = Bytes.toBytes(fileMetaSize);
+        out.write(bytes);
+
         // DISK_FILES_MAGIC
         bytes = Bytes.toBytes(DISK_FILE_MAGIC);
         out.write(bytes);
@@ -2,16 +2,29 @@ package top.parak.minibase.storage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import top.parak.minibase.KeyComparator;
 import top.parak.minibase.KeyValue;
+import top.parak.minibase.PrefixExtractor;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.config.DiskFileReadMode;
 import top.parak.minibase.toolkit.Requires;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -35,6 +48,13 @@ public class DiskStore implements Closeable {
 
     private String         dataDir;
     private List<DiskFile> diskFiles;
+    private BlockCache       blockCache;
+    private DiskFileReadMode readMode;
+    private KeyComparator    keyComparator;
+    private PrefixExtractor  prefixExtractor;
+    private ExecutorService  readaheadExecutor;
+    private int              readaheadMaxBlocks;
+    private ExecutorService  multiGetExecutor;
 
     private int                 maxDiskFiles;
     private volatile AtomicLong maxFileId;
@@ -43,11 +63,56 @@ public class DiskStore implements Closeable {
         this.dataDir = dataDir;
         this.diskFiles = new ArrayList<>();
         this.maxDiskFiles = maxDiskFiles;
+        this.readMode = DiskFileReadMode.Read;
+        this.keyComparator = KeyComparator.BYTEWISE;
+    }
+
+    public DiskStore(Config config, BlockCache blockCache) {
+        this(config.getDataDir(), config.getMaxDiskFiles());
+        this.blockCache = blockCache;
+        this.readMode = config.getDiskFileReadMode();
+        this.keyComparator = config.getKeyComparator();
+        this.prefixExtractor = config.getPrefixExtractor();
+        if (config.getReadaheadMaxBlocks() > 0 && config.getReadaheadThreads() > 0) {
+            this.readaheadExecutor = newDaemonPool("mstore-readahead-%d", config.getReadaheadThreads());
+            this.readaheadMaxBlocks = config.getReadaheadMaxBlocks();
+        }
+        if (config.getMultiGetThreads() > 0) {
+            this.multiGetExecutor = newDaemonPool("mstore-multiget-%d", config.getMultiGetThreads());
+        }
+    }
+
+    static ExecutorService newDaemonPool(String nameFormat, int threads) {
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r);
+            t.setName(String.format(nameFormat, threadCounter.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    private DiskFile newDiskFile() {
+        return new DiskFile(blockCache, readMode, keyComparator, readaheadExecutor, readaheadMaxBlocks);
+    }
+
+    public KeyComparator getKeyComparator() {
+        return keyComparator;
+    }
+
+    public PrefixExtractor getPrefixExtractor() {
+        return prefixExtractor;
+    }
+
+    public BlockCache getBlockCache() {
+        return blockCache;
     }
 
     private File[] listDiskFiles() {
         File file = new File(this.dataDir);
-        return file.listFiles(fileName -> DATA_FILE_RE.matcher(fileName.getName()).matches());
+        File[] files = file.listFiles(fileName -> DATA_FILE_RE.matcher(fileName.getName()).matches());
+        return files == null ? new File[0] : files;
     }
 
     public synchronized long getMaxDiskId() {
@@ -73,9 +138,7 @@ public class DiskStore implements Closeable {
     }
 
     public synchronized void addDiskFile(String fileName) throws IOException {
-        DiskFile diskFile = new DiskFile();
-        diskFile.open(fileName);
-        addDiskFile(diskFile);
+        addDiskFile(openDiskFile(fileName));
     }
 
     public synchronized String getNextDiskFileName() {
@@ -83,12 +146,14 @@ public class DiskStore implements Closeable {
     }
 
     public void open() throws IOException {
+        File dir = new File(this.dataDir);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create data dir " + dataDir);
+        }
         File[] files = listDiskFiles();
-        LOG.info("Open disk store: {}", files);
+        LOG.info("Open disk store: {}", (Object) files);
         for (File file : files) {
-            DiskFile diskFile = new DiskFile();
-            diskFile.open(file.getAbsolutePath());
-            diskFiles.add(diskFile);
+            diskFiles.add(openDiskFile(file.getAbsolutePath()));
         }
         maxFileId = new AtomicLong(getMaxDiskId());
     }
@@ -99,18 +164,98 @@ public class DiskStore implements Closeable {
         }
     }
 
+    /**
+     * Get all the disk files, with a reference taken to each of them under the lock of the
+     * file list, so that none of them is closed before {@link #releaseDiskFiles(List)},
+     * even if it's compacted away in the meantime.
+     *
+     * @return the disk files
+     * @throws IOException if the store has been closed
+     */
+    private List<DiskFile> acquireDiskFiles() throws IOException {
+        synchronized (diskFiles) {
+            List<DiskFile> acquired = new ArrayList<>(diskFiles.size());
+            try {
+                for (DiskFile diskFile : diskFiles) {
+                    diskFile.acquire();
+                    acquired.add(diskFile);
+                }
+            } catch (IOException e) {
+                releaseDiskFiles(acquired);
+                throw e;
+            }
+            return acquired;
+        }
+    }
+
+    private static void releaseDiskFiles(List<DiskFile> diskFiles) throws IOException {
+        IOException releaseException = null;
+        for (DiskFile diskFile : diskFiles) {
+            try {
+                diskFile.release();
+            } catch (IOException e) {
+                releaseException = e;
+            }
+        }
+        if (releaseException != null) {
+            throw releaseException;
+        }
+    }
+
     public void removeDiskFiles(Collection<DiskFile> filesToRemove) {
-        synchronized (filesToRemove) {
+        synchronized (diskFiles) {
             diskFiles.removeAll(filesToRemove);
         }
     }
 
+    /**
+     * Open a disk file without adding it into the store.
+     *
+     * @param fileName the name of the disk file
+     * @return the opened disk file
+     * @throws IOException if an IOException occurs
+     */
+    public DiskFile openDiskFile(String fileName) throws IOException {
+        DiskFile diskFile = newDiskFile();
+        try {
+            diskFile.open(fileName);
+        } catch (IOException | RuntimeException e) {
+            try {
+                diskFile.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+        return diskFile;
+    }
+
+    /**
+     * Replace the compacted disk files by their outputs at once, so that readers see either
+     * all the inputs or all the outputs.
+     *
+     * @param filesToRemove the compacted disk files
+     * @param filesToAdd    the output disk files
+     */
+    public void replaceDiskFiles(Collection<DiskFile> filesToRemove, Collection<DiskFile> filesToAdd) {
+        synchronized (diskFiles) {
+            diskFiles.removeAll(filesToRemove);
+            diskFiles.addAll(filesToAdd);
+        }
+    }
+
     public long getMaxDiskFiles() {
         return this.maxDiskFiles;
     }
 
     @Override
     public void close() throws IOException {
+        if (readaheadExecutor != null) {
+            readaheadExecutor.shutdownNow();
+        }
+        if (multiGetExecutor != null) {
+            multiGetExecutor.shutdownNow();
+        }
         IOException closedException = null;
         for (DiskFile diskFile : diskFiles) {
             try {
@@ -124,75 +269,424 @@ public class DiskStore implements Closeable {
         }
     }
 
+    /**
+     * Get the newest version of the specified key not newer than the specified sequence id
+     * among all the disk files.
+     *
+     * @param key        the byte array of the key
+     * @param sequenceId the largest visible sequence id
+     * @return the KeyValue, or {@code null} if the key is not on disk
+     * @throws IOException if an IOException occurs
+     */
+    public KeyValue get(byte[] key, long sequenceId) throws IOException {
+        KeyValue result = null;
+        List<DiskFile> diskFiles = acquireDiskFiles();
+        try {
+            for (DiskFile diskFile : diskFiles) {
+                // Skip the files which can't hold the key, or only hold older versions than found.
+                if (!diskFile.mayContain(key) || diskFile.getMinSequenceId() > sequenceId
+                        || (result != null && diskFile.getMaxSequenceId() <= result.getSequenceId())) {
+                    continue;
+                }
+                KeyValue kv = diskFile.get(key, sequenceId);
+                if (kv != null && (result == null || kv.getSequenceId() > result.getSequenceId())) {
+                    result = kv;
+                }
+            }
+        } finally {
+            releaseDiskFiles(diskFiles);
+        }
+        return result;
+    }
+
+    /**
+     * Get the newest versions of the specified keys not newer than the specified sequence id
+     * among all the disk files. The keys are sorted, so that each block is loaded at most once
+     * per file, and the files holding any of the keys are read in parallel.
+     *
+     * @param keys       the byte arrays of the keys
+     * @param sequenceId the largest visible sequence id
+     * @return the KeyValues in the order of the keys, {@code null} for the keys not on disk
+     * @throws IOException if an IOException occurs
+     */
+    public KeyValue[] multiGet(byte[][] keys, long sequenceId) throws IOException {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keyComparator.compare(keys[a], keys[b]));
+        byte[][] sortedKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            sortedKeys[i] = keys[order[i]];
+        }
+
+        List<DiskFile> diskFiles = acquireDiskFiles();
+        try {
+            return multiGet(diskFiles, keys.length, order, sortedKeys, sequenceId);
+        } finally {
+            releaseDiskFiles(diskFiles);
+        }
+    }
+
+    private KeyValue[] multiGet(List<DiskFile> diskFiles, int keyCount, Integer[] order, byte[][] sortedKeys,
+                                long sequenceId) throws IOException {
+        List<DiskFile> candidates = new ArrayList<>();
+        for (DiskFile diskFile : diskFiles) {
+            if (diskFile.getMinSequenceId() <= sequenceId && mayContainAny(diskFile, sortedKeys)) {
+                candidates.add(diskFile);
+            }
+        }
+
+        // Hand all the files but the first to the pool, and read the first in place.
+        List<Future<KeyValue[]>> futures = new ArrayList<>();
+        for (int i = 1; i < candidates.size(); i++) {
+            DiskFile diskFile = candidates.get(i);
+            FutureTask<KeyValue[]> task = new FutureTask<>(() -> diskFile.multiGet(sortedKeys, sequenceId));
+            if (multiGetExecutor == null) {
+                task.run();
+            } else {
+                try {
+                    multiGetExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+            futures.add(task);
+        }
+
+        KeyValue[] result = new KeyValue[keyCount];
+        if (!candidates.isEmpty()) {
+            merge(result, order, candidates.get(0).multiGet(sortedKeys, sequenceId));
+        }
+        for (Future<KeyValue[]> future : futures) {
+            try {
+                merge(result, order, future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Multi-get failed", cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for multi-get");
+            }
+        }
+        return result;
+    }
+
+    private static boolean mayContainAny(DiskFile diskFile, byte[][] sortedKeys) {
+        for (byte[] key : sortedKeys) {
+            if (diskFile.mayContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keep the newest version of each key, mapping the sorted position back to the caller's.
+     */
+    private static void merge(KeyValue[] result, Integer[] order, KeyValue[] sorted) {
+        for (int i = 0; i < sorted.length; i++) {
+            KeyValue kv = sorted[i];
+            int index = order[i];
+            if (kv != null && (result[index] == null || kv.getSequenceId() > result[index].getSequenceId())) {
+                result[index] = kv;
+            }
+        }
+    }
+
+    /**
+     * Create an iterator over the specified disk files, which holds a reference to each of
+     * them until it's closed.
+     *
+     * @param diskFiles the disk files, which must not have been closed
+     * @return the iterator
+     * @throws IOException if an IOException occurs
+     */
     public SeekIter<KeyValue> createIterator(List<DiskFile> diskFiles) throws IOException {
         List<SeekIter<KeyValue>> iterList = new ArrayList<>();
-        diskFiles.forEach(diskFile -> iterList.add(diskFile.iterator()));
-        return new MultiIter(iterList);
+        try {
+            for (DiskFile diskFile : diskFiles) {
+                iterList.add(diskFile.iterator());
+            }
+            return new MultiIter(iterList, keyComparator);
+        } catch (IOException | RuntimeException e) {
+            closeIterators(iterList, e);
+            throw e;
+        }
     }
 
-    public SeekIter<KeyValue> createIterator() throws IOException {
-        return createIterator(getDiskFiles());
+    private static void closeIterators(List<SeekIter<KeyValue>> iterList, Exception cause) {
+        for (SeekIter<KeyValue> it : iterList) {
+            try {
+                it.close();
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
     }
 
-    public static class MultiIter implements SeekIter<KeyValue> {
+    public SeekIter<KeyValue> createIterator() throws IOException {
+        List<DiskFile> diskFiles = acquireDiskFiles();
+        try {
+            return createIterator(diskFiles);
+        } finally {
+            releaseDiskFiles(diskFiles);
+        }
+    }
 
-        private class IterNode {
-            KeyValue kv;
-            SeekIter<KeyValue> iter;
+    /**
+     * Create an iterator over the disk files whose key ranges overlap [startKey, endKey).
+     *
+     * @param startKey the start key (inclusive), empty for unbounded
+     * @param endKey   the end key (exclusive), empty for unbounded
+     * @return the iterator
+     * @throws IOException if an IOException occurs
+     */
+    public SeekIter<KeyValue> createIterator(byte[] startKey, byte[] endKey) throws IOException {
+        List<DiskFile> diskFiles = acquireDiskFiles();
+        try {
+            List<DiskFile> overlapping = new ArrayList<>();
+            for (DiskFile diskFile : diskFiles) {
+                if (diskFile.overlaps(startKey, endKey)) {
+                    overlapping.add(diskFile);
+                }
+            }
+            return createIterator(overlapping);
+        } finally {
+            releaseDiskFiles(diskFiles);
+        }
+    }
 
-            public IterNode(KeyValue kv, SeekIter<KeyValue> iter) {
-                this.kv = kv;
-                this.iter = iter;
+    /**
+     * Create an iterator over the disk files which may hold keys starting with the specified
+     * prefix. If the prefix is exactly what the configured extractor extracts from such keys,
+     * the files and blocks whose prefix bloom filters rule it out are skipped as well.
+     *
+     * @param prefix the key prefix
+     * @return the iterator
+     * @throws IOException if an IOException occurs
+     */
+    public SeekIter<KeyValue> createPrefixIterator(byte[] prefix) throws IOException {
+        boolean useFilter = prefixExtractor != null && Arrays.equals(prefixExtractor.extract(prefix), prefix);
+        List<SeekIter<KeyValue>> iterList = new ArrayList<>();
+        List<DiskFile> diskFiles = acquireDiskFiles();
+        try {
+            for (DiskFile diskFile : diskFiles) {
+                if (diskFile.mayContainPrefix(prefix, useFilter)) {
+                    iterList.add(diskFile.prefixIterator(prefix, useFilter));
+                }
             }
+            return new MultiIter(iterList, keyComparator);
+        } catch (IOException | RuntimeException e) {
+            closeIterators(iterList, e);
+            throw e;
+        } finally {
+            releaseDiskFiles(diskFiles);
+        }
+    }
+
+    /**
+     * Get the max sequence id of all the disk files.
+     *
+     * @return the max sequence id, or {@code 0} if there's no disk file
+     */
+    public long getMaxSequenceId() {
+        long maxSequenceId = 0;
+        for (DiskFile diskFile : getDiskFiles()) {
+            maxSequenceId = Math.max(maxSequenceId, diskFile.getMaxSequenceId());
         }
+        return maxSequenceId;
+    }
+
+    /**
+     * Merge iterator.
+     *
+     * <p>Merges sorted iterators with a loser tree: every internal node keeps the loser of the
+     * match between its two subtrees, and the root keeps the overall winner. Replacing the
+     * winner by the next KeyValue of its iterator only replays the matches on the path from
+     * its leaf to the root, one comparison per level, without allocating anything.</p>
+     *
+     * <p>After a backward seek, the same tree merges the iterators backwards, with the order
+     * of the matches reversed.</p>
+     */
+    public static class MultiIter implements SeekIter<KeyValue> {
+
+        private final SeekIter<KeyValue>[] iterList;
+        private final KeyComparator        comparator;
+
+        /**
+         * The current KeyValue of each iterator, {@code null} once it's exhausted.
+         */
+        private final KeyValue[] heads;
 
-        private SeekIter<KeyValue>[] iterList;
-        private PriorityQueue<IterNode> queue;
+        /**
+         * The losers of the internal nodes 1 .. k-1, and the winner at 0, as iterator indexes.
+         */
+        private final int[] tree;
+
+        /**
+         * Whether the iterators are merged backwards, in descending order.
+         */
+        private boolean reverse = false;
 
         public MultiIter(SeekIter<KeyValue>[] iterList) throws IOException {
+            this(iterList, KeyComparator.BYTEWISE);
+        }
+
+        public MultiIter(SeekIter<KeyValue>[] iterList, KeyComparator comparator) throws IOException {
             Requires.requireNotNull(iterList);
-            this.iterList = iterList;
-            this.queue = new PriorityQueue<>();
+            List<SeekIter<KeyValue>> nonNullIters = new ArrayList<>(iterList.length);
             for (SeekIter<KeyValue> seekIter : iterList) {
-                if (seekIter != null && seekIter.hasNext()) {
-                    queue.add(new IterNode(seekIter.next(), seekIter));
+                if (seekIter != null) {
+                    nonNullIters.add(seekIter);
                 }
             }
+            this.iterList = toArray(nonNullIters);
+            this.comparator = comparator;
+            this.heads = new KeyValue[this.iterList.length];
+            this.tree = new int[this.iterList.length];
+            for (int i = 0; i < this.iterList.length; i++) {
+                heads[i] = this.iterList[i].hasNext() ? this.iterList[i].next() : null;
+            }
+            build();
         }
 
-        @SuppressWarnings("unchecked")
         public MultiIter(List<SeekIter<KeyValue>> iterList) throws IOException {
-            this(iterList.toArray(new SeekIter[0]));
+            this(toArray(iterList));
+        }
+
+        public MultiIter(List<SeekIter<KeyValue>> iterList, KeyComparator comparator) throws IOException {
+            this(toArray(iterList), comparator);
+        }
+
+        /**
+         * Copy the iterators into an array, whose element type can only be checked as a
+         * wildcard, since generic arrays can't be created.
+         */
+        @SuppressWarnings("unchecked")
+        private static SeekIter<KeyValue>[] toArray(List<SeekIter<KeyValue>> iterList) {
+            return iterList.toArray((SeekIter<KeyValue>[]) new SeekIter<?>[0]);
+        }
+
+        /**
+         * Whether the iterator a wins against the iterator b, where -1 stands for a virtual
+         * iterator winning against all, and exhausted iterators lose against all.
+         */
+        private boolean beats(int a, int b) {
+            if (a < 0 || b < 0) {
+                return a < 0;
+            }
+            KeyValue kvA = heads[a], kvB = heads[b];
+            if (kvA == null || kvB == null) {
+                return kvB == null && kvA != null;
+            }
+            int ret = reverse ? kvB.compareTo(kvA, comparator) : kvA.compareTo(kvB, comparator);
+            return ret < 0 || (ret == 0 && a < b);
+        }
+
+        /**
+         * Replay the matches from the leaf of the specified iterator up to the root.
+         */
+        private void adjust(int s) {
+            for (int t = (s + tree.length) >> 1; t > 0; t >>= 1) {
+                if (beats(tree[t], s)) {
+                    int winner = tree[t];
+                    tree[t] = s;
+                    s = winner;
+                }
+            }
+            tree[0] = s;
+        }
+
+        private void build() {
+            Arrays.fill(tree, -1);
+            for (int i = tree.length - 1; i >= 0; i--) {
+                adjust(i);
+            }
+        }
+
+        private KeyValue advance(int i) throws IOException {
+            if (reverse) {
+                return iterList[i].hasPrev() ? iterList[i].prev() : null;
+            }
+            return iterList[i].hasNext() ? iterList[i].next() : null;
+        }
+
+        private KeyValue pollWinner() throws IOException {
+            int winner = tree[0];
+            KeyValue kv = heads[winner];
+            heads[winner] = advance(winner);
+            adjust(winner);
+            return kv;
         }
 
         @Override
         public boolean hasNext() throws IOException {
-            return queue.size() > 0;
+            return !reverse && tree.length > 0 && heads[tree[0]] != null;
         }
 
         @Override
         public KeyValue next() throws IOException {
-            while (!queue.isEmpty()) {
-                IterNode first = queue.poll();
-                if (first.kv != null) {
-                    if (first.iter.hasNext()) {
-                        queue.add(new IterNode(first.iter.next(), first.iter));
-                    }
-                }
-                return first.kv;
-            }
-            return null;
+            return hasNext() ? pollWinner() : null;
         }
 
         @Override
         public void seekTo(KeyValue target) throws IOException {
-            queue.clear();
+            reverse = false;
+            for (int i = 0; i < iterList.length; i++) {
+                iterList[i].seekTo(target);
+                heads[i] = advance(i);
+            }
+            build();
+        }
+
+        @Override
+        public void seekToLast() throws IOException {
+            reverse = true;
+            for (int i = 0; i < iterList.length; i++) {
+                iterList[i].seekToLast();
+                heads[i] = advance(i);
+            }
+            build();
+        }
+
+        @Override
+        public void seekForPrev(KeyValue target) throws IOException {
+            reverse = true;
+            for (int i = 0; i < iterList.length; i++) {
+                iterList[i].seekForPrev(target);
+                heads[i] = advance(i);
+            }
+            build();
+        }
+
+        @Override
+        public boolean hasPrev() throws IOException {
+            return reverse && tree.length > 0 && heads[tree[0]] != null;
+        }
+
+        @Override
+        public KeyValue prev() throws IOException {
+            return hasPrev() ? pollWinner() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException closeException = null;
             for (SeekIter<KeyValue> it : iterList) {
-                it.seekTo(target);
-                if (it.hasNext()) {
-                    queue.add(new IterNode(it.next(), it));
+                try {
+                    it.close();
+                } catch (IOException e) {
+                    closeException = e;
                 }
             }
+            Arrays.fill(heads, null);
+            if (closeException != null) {
+                throw closeException;
+            }
         }
     }
 
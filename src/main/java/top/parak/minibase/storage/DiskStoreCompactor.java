@@ -3,12 +3,24 @@ package top.parak.minibase.storage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import top.parak.minibase.Iter;
+import top.parak.minibase.KeyComparator;
 import top.parak.minibase.KeyValue;
+import top.parak.minibase.config.Config;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -21,73 +33,311 @@ public class DiskStoreCompactor extends Compactor {
 
     private static final Logger LOG = LoggerFactory.getLogger(DiskStoreCompactor.class);
 
-    private DiskStore        diskStore;
-    private volatile boolean running = true;
+    private DiskStore          diskStore;
+    private SnapshotRegistry   snapshots;
+    private CompactionStrategy strategy;
+    private CompactionFilter   filter;
+    private int                maxSubcompactions;
+    private ExecutorService    subcompactionExecutor;
+    private volatile boolean   running = true;
 
-    public DiskStoreCompactor(DiskStore diskStore) {
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder droppedBytes = new LongAdder();
+    private final LongAdder droppedDeleteCount = new LongAdder();
+
+    public DiskStoreCompactor(Config config, DiskStore diskStore, SnapshotRegistry snapshots) {
         this.diskStore = diskStore;
+        this.snapshots = snapshots;
+        this.strategy = createStrategy(config);
+        this.filter = config.getTtlMs() > 0
+                ? new TtlCompactionFilter(config.getTtlMs(), config.getCompactionFilter())
+                : config.getCompactionFilter();
+        this.maxSubcompactions = config.getMaxSubcompactions();
+        if (maxSubcompactions > 1) {
+            this.subcompactionExecutor = DiskStore.newDaemonPool("mstore-subcompaction-%d", maxSubcompactions - 1);
+        }
         this.setDaemon(true);
     }
 
-    private void performCompact(List<DiskFile> filesToCompact) throws IOException {
+    /**
+     * Get the number of KeyValues dropped by compactions, obsolete versions and deletes.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Get the serialized size of the KeyValues dropped by compactions.
+     */
+    public long getDroppedBytes() {
+        return droppedBytes.sum();
+    }
+
+    /**
+     * Get the number of deletes dropped by compactions, which are also counted by
+     * {@link #getDroppedCount()}.
+     */
+    public long getDroppedDeleteCount() {
+        return droppedDeleteCount.sum();
+    }
+
+    private static CompactionStrategy createStrategy(Config config) {
+        if (config.getCompactionStrategy() != null) {
+            return config.getCompactionStrategy();
+        }
+        switch (config.getCompactionStyle()) {
+            case Merge:
+                return new MergeCompactionStrategy(config.getMaxDiskFiles());
+            case SizeTiered:
+                return new SizeTieredCompactionStrategy(config.getSizeTieredSizeRatio(),
+                        config.getSizeTieredMinMergeWidth(), config.getMaxDiskFiles());
+            case Leveled:
+                return new LeveledCompactionStrategy(config);
+            default:
+                throw new IllegalArgumentException("Unknown compaction style: " + config.getCompactionStyle());
+        }
+    }
+
+    /**
+     * Merge the input files into output files of the output level. A compaction whose
+     * outputs may be split is split into sub-jobs over disjoint key ranges, which merge and
+     * write their own output files in parallel, and all the outputs are installed at once
+     * when every sub-job has succeeded.
+     */
+    private void performCompact(Compaction compaction) throws IOException {
+        List<DiskFile> filesToCompact = compaction.getInputs();
         if (filesToCompact == null || filesToCompact.isEmpty()) {
             return;
         }
 
-        String fileName = diskStore.getNextDiskFileName();
-        String fileTempName = fileName + DiskStore.FILE_NAME_TMP_SUFFIX;
+        NavigableSet<Long> liveSequenceIds = snapshots.getLiveSequenceIds();
+        Predicate<KeyValue> mayHaveOlderVersions = olderVersionsOutside(filesToCompact);
+        long droppedBefore = droppedCount.sum();
+        List<byte[]> splitKeys = pickSplitKeys(compaction);
+        List<String> outputNames = Collections.synchronizedList(new ArrayList<>());
         try {
-            try (DiskFileWriter writer = new DiskFileWriter(fileTempName)) {
-                for (Iter<KeyValue> iter = diskStore.createIterator(filesToCompact); iter.hasNext();) {
-                    writer.append(iter.next());
+            // Hand all the sub-jobs but the first to the pool, and run the first in place.
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < splitKeys.size(); i++) {
+                byte[] startKey = splitKeys.get(i);
+                byte[] endKey = i + 1 < splitKeys.size() ? splitKeys.get(i + 1) : null;
+                FutureTask<Void> task = new FutureTask<>(() -> {
+                    writeOutputs(compaction, liveSequenceIds, mayHaveOlderVersions, startKey, endKey, outputNames);
+                    return null;
+                });
+                try {
+                    subcompactionExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
                 }
-                writer.appendIndex();
-                writer.appendTrailer();
+                futures.add(task);
+            }
+            IOException error = null;
+            try {
+                writeOutputs(compaction, liveSequenceIds, mayHaveOlderVersions, null, splitKeys.isEmpty() ? null : splitKeys.get(0), outputNames);
+            } catch (IOException e) {
+                error = e;
+            }
+            // Wait for all the sub-jobs even if one failed, before their outputs are cleaned up.
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (error == null) {
+                        error = cause instanceof IOException ? (IOException) cause : new IOException("Subcompaction failed", cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for subcompactions");
+                }
+            }
+            if (error != null) {
+                throw error;
             }
 
-            File file = new File(fileTempName);
-            if (!file.renameTo(new File(fileName))) {
-                throw new IOException("Rename " + fileTempName + " to " + fileName + " failed");
+            List<DiskFile> outputs = new ArrayList<>();
+            try {
+                for (String fileName : outputNames) {
+                    File file = new File(fileName + DiskStore.FILE_NAME_TMP_SUFFIX);
+                    if (!file.renameTo(new File(fileName))) {
+                        throw new IOException("Rename " + file.getName() + " to " + fileName + " failed");
+                    }
+                    outputs.add(diskStore.openDiskFile(fileName));
+                }
+                diskStore.replaceDiskFiles(filesToCompact, outputs);
+            } catch (IOException | RuntimeException e) {
+                discardOutputs(outputs, outputNames, e);
+                throw e;
             }
 
+            // The readers still holding the input files keep them open, the last to release
+            // a file closes and archives it.
             for (DiskFile diskFile : filesToCompact) {
-                diskFile.close();
-                File oldFile = new File(diskFile.getFileName());
-                File archliveFile = new File(diskFile.getFileName() + DiskStore.FILE_NAME_ARCHIVE_SUFFIX);
-                if (!oldFile.renameTo(archliveFile)) {
-                    LOG.error("Perform compact, failed to rename file {} to archive file {}",
-                            oldFile.getName(), archliveFile.getName());
-                }
+                diskFile.archive();
             }
-            diskStore.removeDiskFiles(filesToCompact);
-            diskStore.addDiskFile(fileName);
         } finally {
-            File file = new File(fileTempName);
-            if (file.exists()) {
-                file.delete();
+            for (String fileName : outputNames) {
+                File file = new File(fileName + DiskStore.FILE_NAME_TMP_SUFFIX);
+                if (file.exists()) {
+                    file.delete();
+                }
             }
         }
 
         List<String> diskFileNames = filesToCompact.stream().map(DiskFile::getFileName).collect(Collectors.toList());
-        LOG.info("Perform compact, {} -> {}", diskFileNames, fileName);
+        LOG.info("Perform compact to level {} in {} sub-jobs, {} -> {}, dropped {} KeyValues", compaction.getOutputLevel(),
+                splitKeys.size() + 1, diskFileNames, outputNames, droppedCount.sum() - droppedBefore);
+    }
+
+    /**
+     * Close and delete the output files of a compaction which failed to install them, so
+     * that they're neither leaked nor picked up as live files by the next open.
+     */
+    private static void discardOutputs(List<DiskFile> outputs, List<String> outputNames, Exception cause) {
+        for (DiskFile output : outputs) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+        for (String fileName : outputNames) {
+            File file = new File(fileName);
+            if (file.exists() && !file.delete()) {
+                LOG.error("Perform compact, failed to delete output file {}", file.getName());
+            }
+        }
+    }
+
+    /**
+     * Tell whether any disk file other than the input files may hold a version of the key
+     * older than the specified delete. The mem store never needs checking: a write takes its
+     * sequence id under the lock it goes into the active table with, see
+     * {@link MemStore#add(int, java.util.function.LongFunction)}, so every version still in
+     * memory, and every file flushed after the files listed now, is newer than any version
+     * in the listed files.
+     */
+    private Predicate<KeyValue> olderVersionsOutside(List<DiskFile> filesToCompact) {
+        List<DiskFile> otherFiles = new ArrayList<>(diskStore.getDiskFiles());
+        otherFiles.removeAll(filesToCompact);
+        return kv -> {
+            for (DiskFile diskFile : otherFiles) {
+                if (diskFile.getMinSequenceId() < kv.getSequenceId() && diskFile.mayContain(kv.getKey())) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Pick the keys splitting a compaction into sub-jobs, out of the last keys of the input
+     * blocks, so that the sub-jobs read about the same number of blocks. There are at most
+     * one sub-job per target file size of input, so small compactions are not split.
+     */
+    private List<byte[]> pickSplitKeys(Compaction compaction) {
+        List<byte[]> splitKeys = new ArrayList<>();
+        if (maxSubcompactions <= 1 || compaction.getTargetFileSize() == Long.MAX_VALUE) {
+            return splitKeys;
+        }
+        long inputSize = 0;
+        List<byte[]> blockKeys = new ArrayList<>();
+        for (DiskFile diskFile : compaction.getInputs()) {
+            inputSize += diskFile.getFileSize();
+            blockKeys.addAll(diskFile.getBlockLastKeys());
+        }
+        int subcompactions = (int) Math.min(maxSubcompactions, inputSize / compaction.getTargetFileSize());
+        if (subcompactions <= 1 || blockKeys.size() < subcompactions) {
+            return splitKeys;
+        }
+        KeyComparator comparator = diskStore.getKeyComparator();
+        blockKeys.sort(comparator::compare);
+        for (int i = 1; i < subcompactions; i++) {
+            byte[] key = blockKeys.get(i * blockKeys.size() / subcompactions);
+            if (splitKeys.isEmpty() || comparator.compare(splitKeys.get(splitKeys.size() - 1), key) < 0) {
+                splitKeys.add(key);
+            }
+        }
+        return splitKeys;
+    }
+
+    /**
+     * Merge the KeyValues of the input files in the key range [startKey, endKey), where
+     * {@code null} leaves that side unbounded, into output files, starting a new output file
+     * once the current one reaches the target size. All the versions of a key go into the
+     * same file, so that the output files never overlap each other.
+     */
+    private void writeOutputs(Compaction compaction, NavigableSet<Long> liveSequenceIds,
+                              Predicate<KeyValue> mayHaveOlderVersions, byte[] startKey, byte[] endKey, List<String> outputNames) throws IOException {
+        KeyComparator comparator = diskStore.getKeyComparator();
+        SeekIter<KeyValue> it = diskStore.createIterator(compaction.getInputs());
+        CompactionIter iter = new CompactionIter(endKey == null ? it : new BoundedIter(it, endKey, comparator),
+                liveSequenceIds, comparator, mayHaveOlderVersions);
+        iter.setFilter(filter, compaction.getOutputLevel());
+
+        DiskFileWriter writer = null;
+        try {
+            if (startKey != null) {
+                it.seekTo(KeyValue.createDelete(startKey, Long.MAX_VALUE));
+            }
+            KeyValue lastKV = null;
+            while (iter.hasNext()) {
+                KeyValue kv = iter.next();
+                if (writer != null && writer.getDataSize() >= compaction.getTargetFileSize()
+                        && lastKV.compareKey(kv, comparator) != 0) {
+                    finishOutput(writer);
+                    writer = null;
+                }
+                if (writer == null) {
+                    String fileName = diskStore.getNextDiskFileName();
+                    outputNames.add(fileName);
+                    writer = new DiskFileWriter(fileName + DiskStore.FILE_NAME_TMP_SUFFIX,
+                            diskStore.getPrefixExtractor(), compaction.getOutputLevel());
+                }
+                writer.append(kv);
+                lastKV = kv;
+            }
+            if (writer != null) {
+                finishOutput(writer);
+                writer = null;
+            }
+            droppedCount.add(iter.getDroppedCount());
+            droppedBytes.add(iter.getDroppedBytes());
+            droppedDeleteCount.add(iter.getDroppedDeleteCount());
+        } finally {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } finally {
+                iter.close();
+            }
+        }
+    }
+
+    private static void finishOutput(DiskFileWriter writer) throws IOException {
+        try {
+            writer.appendIndex();
+            writer.appendTrailer();
+        } finally {
+            writer.close();
+        }
     }
 
     @Override
     public void compact() throws IOException {
-        List<DiskFile> filesToCompact = new ArrayList<>(diskStore.getDiskFiles());
-        performCompact(filesToCompact);
+        performCompact(strategy.pickAll(diskStore.getDiskFiles()));
     }
 
     @Override
     public void run() {
         while (running) {
             try {
-                boolean isCompacted = false;
-                if (diskStore.getDiskFiles().size() > diskStore.getMaxDiskFiles()) {
-                    performCompact(diskStore.getDiskFiles());
-                    isCompacted = true;
-                }
-                if (!isCompacted) {
+                Compaction compaction = strategy.pick(diskStore.getDiskFiles());
+                if (compaction != null) {
+                    performCompact(compaction);
+                } else {
                     Thread.sleep(1000);
                 }
             } catch (IOException e) {
@@ -97,6 +347,48 @@ public class DiskStoreCompactor extends Compactor {
                 break;
             }
         }
+        if (subcompactionExecutor != null) {
+            subcompactionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Iterator stopping before the first KeyValue whose key is not less than the end key.
+     */
+    private static class BoundedIter implements Iter<KeyValue> {
+        private final Iter<KeyValue> it;
+        private final byte[]         endKey;
+        private final KeyComparator  comparator;
+        private KeyValue             pendingKV;
+
+        BoundedIter(Iter<KeyValue> it, byte[] endKey, KeyComparator comparator) {
+            this.it = it;
+            this.endKey = endKey;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (pendingKV == null && it.hasNext()) {
+                pendingKV = it.next();
+            }
+            return pendingKV != null && pendingKV.compareKey(endKey, comparator) < 0;
+        }
+
+        @Override
+        public KeyValue next() throws IOException {
+            if (!hasNext()) {
+                return null;
+            }
+            KeyValue kv = pendingKV;
+            pendingKV = null;
+            return kv;
+        }
+
+        @Override
+        public void close() throws IOException {
+            it.close();
+        }
     }
 
 }
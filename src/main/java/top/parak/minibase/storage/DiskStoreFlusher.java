@@ -23,9 +23,9 @@ public class DiskStoreFlusher implements Flusher {
     @Override
     public void flush(Iter<KeyValue> it) throws IOException {
         String fileName = diskStore.getNextDiskFileName();
-        String fileTempName = fileName + DiskStore.FILE_NAME_ARCHIVE_SUFFIX;
+        String fileTempName = fileName + DiskStore.FILE_NAME_TMP_SUFFIX;
         try {
-            try (DiskFileWriter writer = new DiskFileWriter(fileTempName)) {
+            try (DiskFileWriter writer = new DiskFileWriter(fileTempName, diskStore.getPrefixExtractor())) {
                 while (it.hasNext()) {
                     writer.append(it.next());
                 }
@@ -0,0 +1,170 @@
+package top.parak.minibase.storage;
+
+import top.parak.minibase.KeyComparator;
+import top.parak.minibase.config.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leveled compaction strategy.
+ *
+ * <p>Level 0 is made of the flushed files, which may overlap each other. The levels 1 .. n
+ * are made of non-overlapping files of about the target file size, and the level i is
+ * targeted at the base size times the multiplier to the power of i - 1.</p>
+ *
+ * <p>The level to compact is the one most over its target: level 0 by its number of files,
+ * the others by their total size. Level 0 is compacted as a whole, and any other level one
+ * file at a time, round-robin over its key space. Either way, only the files of the next
+ * level overlapping the picked files are merged in, so every compaction rewrites about the
+ * new data times the multiplier, however large the store is.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class LeveledCompactionStrategy implements CompactionStrategy {
+
+    private final int           level0CompactionTrigger;
+    private final long          maxBytesForLevelBase;
+    private final int           levelSizeMultiplier;
+    private final int           maxLevels;
+    private final long          targetFileSize;
+    private final KeyComparator comparator;
+
+    /**
+     * The largest key of the file last compacted in each level, where the next compaction
+     * of that level resumes.
+     */
+    private final byte[][] compactPointers;
+
+    public LeveledCompactionStrategy(Config config) {
+        this.level0CompactionTrigger = config.getLevel0CompactionTrigger();
+        this.maxBytesForLevelBase = config.getMaxBytesForLevelBase();
+        this.levelSizeMultiplier = config.getLevelSizeMultiplier();
+        this.maxLevels = config.getMaxLevels();
+        this.targetFileSize = config.getTargetFileSize();
+        this.comparator = config.getKeyComparator();
+        this.compactPointers = new byte[maxLevels][];
+    }
+
+    private List<List<DiskFile>> groupByLevel(List<DiskFile> diskFiles) {
+        List<List<DiskFile>> levels = new ArrayList<>(maxLevels);
+        for (int i = 0; i < maxLevels; i++) {
+            levels.add(new ArrayList<>());
+        }
+        for (DiskFile diskFile : diskFiles) {
+            levels.get(Math.min(diskFile.getLevel(), maxLevels - 1)).add(diskFile);
+        }
+        return levels;
+    }
+
+    private long maxBytesForLevel(int level) {
+        long maxBytes = maxBytesForLevelBase;
+        for (int i = 1; i < level; i++) {
+            maxBytes *= levelSizeMultiplier;
+        }
+        return maxBytes;
+    }
+
+    private static long totalSize(List<DiskFile> diskFiles) {
+        long size = 0;
+        for (DiskFile diskFile : diskFiles) {
+            size += diskFile.getFileSize();
+        }
+        return size;
+    }
+
+    @Override
+    public Compaction pick(List<DiskFile> diskFiles) {
+        List<List<DiskFile>> levels = groupByLevel(diskFiles);
+
+        int level = -1;
+        double bestScore = 1.0;
+        double score = levels.get(0).size() / (double) level0CompactionTrigger;
+        if (score >= bestScore) {
+            level = 0;
+            bestScore = score;
+        }
+        // The last level has nowhere to go.
+        for (int i = 1; i < maxLevels - 1; i++) {
+            score = totalSize(levels.get(i)) / (double) maxBytesForLevel(i);
+            if (score > bestScore) {
+                level = i;
+                bestScore = score;
+            }
+        }
+        if (level < 0) {
+            return null;
+        }
+
+        List<DiskFile> inputs = new ArrayList<>();
+        if (level == 0) {
+            inputs.addAll(levels.get(0));
+        } else {
+            inputs.add(pickFile(level, levels.get(level)));
+        }
+        addOverlapping(inputs, levels.get(level + 1));
+        return new Compaction(inputs, level + 1, targetFileSize);
+    }
+
+    /**
+     * Compact all the disk files into the deepest level holding any of them.
+     */
+    @Override
+    public Compaction pickAll(List<DiskFile> diskFiles) {
+        int outputLevel = 1;
+        for (DiskFile diskFile : diskFiles) {
+            outputLevel = Math.max(outputLevel, Math.min(diskFile.getLevel(), maxLevels - 1));
+        }
+        return new Compaction(new ArrayList<>(diskFiles), outputLevel, targetFileSize);
+    }
+
+    /**
+     * Pick the first file after the compact pointer of the level, wrapping around.
+     */
+    private DiskFile pickFile(int level, List<DiskFile> levelFiles) {
+        byte[] pointer = compactPointers[level];
+        DiskFile first = null, next = null;
+        for (DiskFile diskFile : levelFiles) {
+            if (first == null || comparator.compare(diskFile.getSmallestKey(), first.getSmallestKey()) < 0) {
+                first = diskFile;
+            }
+            if (pointer != null && comparator.compare(diskFile.getSmallestKey(), pointer) > 0
+                    && (next == null || comparator.compare(diskFile.getSmallestKey(), next.getSmallestKey()) < 0)) {
+                next = diskFile;
+            }
+        }
+        DiskFile picked = next != null ? next : first;
+        compactPointers[level] = picked.getLargestKey();
+        return picked;
+    }
+
+    /**
+     * Add the files of the next level overlapping the key range of the inputs.
+     */
+    private void addOverlapping(List<DiskFile> inputs, List<DiskFile> nextLevelFiles) {
+        byte[] smallestKey = null, largestKey = null;
+        for (DiskFile diskFile : inputs) {
+            if (diskFile.getKvCount() == 0) {
+                continue;
+            }
+            if (smallestKey == null || comparator.compare(diskFile.getSmallestKey(), smallestKey) < 0) {
+                smallestKey = diskFile.getSmallestKey();
+            }
+            if (largestKey == null || comparator.compare(diskFile.getLargestKey(), largestKey) > 0) {
+                largestKey = diskFile.getLargestKey();
+            }
+        }
+        if (smallestKey == null) {
+            return;
+        }
+        for (DiskFile diskFile : nextLevelFiles) {
+            if (diskFile.getKvCount() > 0
+                    && comparator.compare(diskFile.getLargestKey(), smallestKey) >= 0
+                    && comparator.compare(diskFile.getSmallestKey(), largestKey) <= 0) {
+                inputs.add(diskFile);
+            }
+        }
+    }
+
+}
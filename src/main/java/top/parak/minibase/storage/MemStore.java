@@ -9,15 +9,18 @@ import top.parak.minibase.storage.DiskStore.MultiIter;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableMap;
-import java.util.SortedMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
 
 /**
  * Memory store.
@@ -29,64 +32,314 @@ public class MemStore implements Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(MemStore.class);
 
-    private final AtomicLong             dataSize = new AtomicLong();
+    private final LongAdder              dataSize = new LongAdder();
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private final AtomicBoolean          isSnapshotFlushing = new AtomicBoolean(false);
+    private final Object                 flushedSignal = new Object();
 
-    private volatile ConcurrentSkipListMap<KeyValue, KeyValue> kvMap;
-    private volatile ConcurrentSkipListMap<KeyValue, KeyValue> snapshot;
+    private final AtomicLong writeSlowdownCount = new AtomicLong();
+    private final AtomicLong writeStallCount = new AtomicLong();
+    private final AtomicLong writeStallNanos = new AtomicLong();
+
+    private volatile MemTable kvMap;
+
+    /**
+     * The immutable tables waiting to be flushed, from the oldest to the newest.
+     */
+    private volatile List<ImmutableMemTable> snapshots;
 
     private Config          config;
     private Flusher         flusher;
     private ExecutorService executorService;
+    private WriteAheadLog   wal;
+    private SequenceIdAllocator sequenceIds;
 
     public MemStore(Config config, Flusher flusher, ExecutorService executorService) {
+        this(config, flusher, executorService, null);
+    }
+
+    public MemStore(Config config, Flusher flusher, ExecutorService executorService, WriteAheadLog wal) {
+        this(config, flusher, executorService, wal, new AtomicLong()::addAndGet);
+    }
+
+    public MemStore(Config config, Flusher flusher, ExecutorService executorService, WriteAheadLog wal,
+                    SequenceIdAllocator sequenceIds) {
         this.config = config;
         this.flusher = flusher;
         this.executorService = executorService;
+        this.wal = wal;
+        this.sequenceIds = sequenceIds;
+
+        this.kvMap = newMemTable();
+        this.snapshots = Collections.emptyList();
+    }
+
+    /**
+     * Hands out the sequence ids of the writes, and publishes them once the writes are done.
+     */
+    public interface SequenceIdAllocator {
+
+        /**
+         * Allocate consecutive sequence ids.
+         *
+         * @param count the number of sequence ids
+         * @return the last sequence id allocated
+         */
+        long allocate(int count);
+
+        /**
+         * Publish the sequence ids of a write which is done, whether it succeeded or not.
+         *
+         * @param firstSequenceId the first sequence id of the write
+         * @param lastSequenceId  the last sequence id of the write
+         */
+        default void complete(long firstSequenceId, long lastSequenceId) {
+        }
+    }
 
-        this.dataSize.set(0);
-        this.kvMap = new ConcurrentSkipListMap<>();
-        this.snapshot = null;
+    private static class ImmutableMemTable {
+        final MemTable memTable;
+        final long     rolledLogId;
+
+        ImmutableMemTable(MemTable memTable, long rolledLogId) {
+            this.memTable = memTable;
+            this.rolledLogId = rolledLogId;
+        }
     }
 
-    public void add(KeyValue kv) throws IOException {
-        flushIfNeeded(true);
+    private MemTable newMemTable() {
+        if (config.getMemTableShards() > 1) {
+            return new ShardedMemTable(config.getMemTableShards(), this::newMemTableShard, config.getKeyComparator());
+        }
+        return newMemTableShard();
+    }
+
+    private MemTable newMemTableShard() {
+        switch (config.getMemTableType()) {
+            case OffHeapArena:
+                return new ArenaMemTable(config.getArenaSlabSize(), config.getKeyComparator());
+            case SkipList:
+            default:
+                return new SkipListMemTable(config.getKeyComparator());
+        }
+    }
+
+    /**
+     * Add the KeyValues of one write, allocating its sequence ids only once there's room for
+     * it, and under the same lock it goes in with. So a table switched into the flushing
+     * queue only holds sequence ids older than all the ones of the tables after it, and no
+     * disk file flushed from the tables ever holds a version newer than one still in memory.
+     *
+     * @param count   the number of KeyValues of the write
+     * @param builder builds the KeyValues of the write from its first sequence id
+     * @throws IOException if an IOException occurs
+     */
+    public void add(int count, LongFunction<List<KeyValue>> builder) throws IOException {
+        makeRoomForWrite();
+        long firstSequenceId = 0;
         lock.readLock().lock();
         try {
-            KeyValue prevKv;
-            if ((prevKv = kvMap.put(kv, kv)) == null) {
-                dataSize.addAndGet(kv.getSerializeSize());
-            } else {
-                dataSize.addAndGet(kv.getSerializeSize() - prevKv.getSerializeSize());
+            firstSequenceId = sequenceIds.allocate(count) - count + 1;
+            List<KeyValue> kvs = builder.apply(firstSequenceId);
+            if (wal != null) {
+                wal.append(kvs);
+            }
+            for (KeyValue kv : kvs) {
+                dataSize.add(kvMap.add(kv));
             }
         } finally {
             lock.readLock().unlock();
+            if (firstSequenceId > 0) {
+                sequenceIds.complete(firstSequenceId, firstSequenceId + count - 1);
+            }
+        }
+    }
+
+    /**
+     * Add a KeyValue recovered from the write-ahead log, without logging it again.
+     *
+     * <p>The recovered KeyValues are not in the current log, so the active table is never
+     * switched into the flushing queue while replaying, which would let a flush truncate
+     * the replayed logs too early. A full table is flushed in place instead, and the
+     * replayed logs are only truncated by {@link #finishReplay()}.</p>
+     *
+     * @param kv the recovered KeyValue
+     * @throws IOException if an IOException occurs
+     */
+    public void replay(KeyValue kv) throws IOException {
+        dataSize.add(kvMap.add(kv));
+        if (dataSize.sum() > config.getMaxMemStoreSize()) {
+            flushReplayed();
         }
-        flushIfNeeded(false);
     }
 
-    private void flushIfNeeded(boolean shouldBlocking) throws IOException {
-        if (getDataSize() > config.getMaxMemStoreSize()) {
-            if (isSnapshotFlushing.get() && shouldBlocking) {
-                throw new IOException("MemStore is full, current data size is " + dataSize.get() + "B, max is "
-                        + config.getMaxMemStoreSize() + "B, please wait util the the flushing is finished.");
-            } else if (isSnapshotFlushing.compareAndSet(false, true)) {
+    /**
+     * Flush all the recovered KeyValues left in the active table, and then truncate the
+     * replayed logs, whose records are all durable in disk files by now.
+     *
+     * @throws IOException if an IOException occurs
+     */
+    public void finishReplay() throws IOException {
+        if (!kvMap.isEmpty()) {
+            flushReplayed();
+        }
+        if (wal != null) {
+            wal.truncateReplayed();
+        }
+    }
+
+    private void flushReplayed() throws IOException {
+        MemTable flushed = kvMap;
+        try (SeekIter<KeyValue> it = flushed.iterator()) {
+            flusher.flush(it);
+        }
+        kvMap = newMemTable();
+        dataSize.reset();
+        flushed.release();
+    }
+
+    /**
+     * Make sure the active table has room for a write.
+     *
+     * <ul>
+     *     <li>When {@link Config#getWriteSlowdownMemTables()} tables are waiting to be flushed,
+     *     every write is delayed once, so that writers slow down smoothly.</li>
+     *     <li>When the active table is full, it's switched into the flushing queue.</li>
+     *     <li>When the active table is full and the queue is full too, the write is stalled
+     *     until a flush finishes, at most {@link Config#getWriteStallTimeoutMs()}.</li>
+     * </ul>
+     *
+     * @throws IOException if the write has been stalled for too long
+     */
+    private void makeRoomForWrite() throws IOException {
+        boolean delayed = false;
+        long stallStart = 0;
+        try {
+            while (true) {
+                int queued = snapshots.size();
+                if (!delayed && queued >= config.getWriteSlowdownMemTables()
+                        && queued < config.getMaxImmutableMemTables()) {
+                    writeSlowdownCount.incrementAndGet();
+                    Thread.sleep(config.getWriteSlowdownDelayMs());
+                    delayed = true;
+                } else if (dataSize.sum() <= config.getMaxMemStoreSize()) {
+                    return;
+                } else if (queued < config.getMaxImmutableMemTables()) {
+                    switchMemTable();
+                } else {
+                    if (stallStart == 0) {
+                        stallStart = System.nanoTime();
+                        writeStallCount.incrementAndGet();
+                    }
+                    long remainingMs = config.getWriteStallTimeoutMs()
+                            - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stallStart);
+                    if (remainingMs <= 0) {
+                        throw new IOException("Write stalled for " + config.getWriteStallTimeoutMs() + "ms, "
+                                + queued + " mem tables are waiting to be flushed");
+                    }
+                    scheduleFlush();
+                    synchronized (flushedSignal) {
+                        if (snapshots.size() >= config.getMaxImmutableMemTables()) {
+                            flushedSignal.wait(remainingMs);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for room to write", e);
+        } finally {
+            if (stallStart != 0) {
+                writeStallNanos.addAndGet(System.nanoTime() - stallStart);
+            }
+        }
+    }
+
+    /**
+     * Move the active table to the flushing queue, and roll the log so that
+     * the rolled logs cover the queued tables only.
+     */
+    private void switchMemTable() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (dataSize.sum() <= config.getMaxMemStoreSize()
+                    || snapshots.size() >= config.getMaxImmutableMemTables()) {
+                return;
+            }
+            long rolledLogId = wal != null ? wal.roll() : -1;
+            List<ImmutableMemTable> queued = new ArrayList<>(snapshots);
+            queued.add(new ImmutableMemTable(kvMap, rolledLogId));
+            snapshots = queued;
+            kvMap = newMemTable();
+            dataSize.reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!snapshots.isEmpty() && isSnapshotFlushing.compareAndSet(false, true)) {
+            try {
                 executorService.submit(new FlusherTask());
+            } catch (RejectedExecutionException e) {
+                isSnapshotFlushing.set(false);
+                LOG.error("Schedule flush failed", e);
             }
         }
     }
 
     public long getDataSize() {
-        return this.dataSize.get();
+        return this.dataSize.sum();
     }
 
     public boolean isFlushing() {
         return this.isSnapshotFlushing.get();
     }
 
+    public int getImmutableMemTableCount() {
+        return snapshots.size();
+    }
+
+    public long getWriteSlowdownCount() {
+        return writeSlowdownCount.get();
+    }
+
+    public long getWriteStallCount() {
+        return writeStallCount.get();
+    }
+
+    public long getWriteStallTimeMs() {
+        return TimeUnit.NANOSECONDS.toMillis(writeStallNanos.get());
+    }
+
+    /**
+     * Get the newest version of the specified key not newer than the specified sequence id,
+     * looking into the active table and all the tables waiting to be flushed.
+     *
+     * @param key        the byte array of the key
+     * @param sequenceId the largest visible sequence id
+     * @return the KeyValue, or {@code null} if the key is not in memory
+     */
+    public KeyValue get(byte[] key, long sequenceId) {
+        KeyValue result = kvMap.get(key, sequenceId);
+        for (ImmutableMemTable snapshot : snapshots) {
+            KeyValue kv = snapshot.memTable.get(key, sequenceId);
+            if (kv != null && (result == null || kv.getSequenceId() > result.getSequenceId())) {
+                result = kv;
+            }
+        }
+        return result;
+    }
+
     public SeekIter<KeyValue> createIterator() throws IOException {
-        return new MemStoreIter(kvMap, snapshot);
+        // Read the active table first, so that a concurrent switch can only make a table seen twice.
+        MemTable active = kvMap;
+        List<MemTable> immutables = new ArrayList<>();
+        for (ImmutableMemTable snapshot : snapshots) {
+            immutables.add(snapshot.memTable);
+        }
+        return new MemStoreIter(active, immutables);
     }
 
     @Override
@@ -96,44 +349,64 @@ public class MemStore implements Closeable {
     private class FlusherTask implements Runnable {
         @Override
         public void run() {
-            // 1. Save snapshot.
-            lock.writeLock().lock();
-            try {
-                snapshot = kvMap;
-                kvMap = new ConcurrentSkipListMap<>();
-                dataSize.set(0);
-            } finally {
-                lock.writeLock().unlock();
-            }
+            while (true) {
+                List<ImmutableMemTable> queued = snapshots;
+                if (queued.isEmpty()) {
+                    isSnapshotFlushing.set(false);
+                    // A table may have been queued after the check above but before the flag is reset.
+                    if (snapshots.isEmpty() || !isSnapshotFlushing.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
 
-            // 2. Flush snapshot to disk file.
-            boolean success = false;
-            for (int i = 1; i <= config.getMaxFlushRetries(); i++) {
-                try {
-                    flusher.flush(new IteratorWrapper(snapshot));
-                    success = true;
-                    LOG.info("Flush succeed");
-                } catch (Exception ex) {
-                    LOG.error("Flush failed, retry times: {}, max retries: {}", i, config.getMaxFlushRetries(), ex);
-                    if (i >= config.getMaxFlushRetries()) {
+                // 1. Flush the oldest table to disk file.
+                ImmutableMemTable oldest = queued.get(0);
+                boolean success = false;
+                for (int i = 1; i <= config.getMaxFlushRetries(); i++) {
+                    try {
+                        try (SeekIter<KeyValue> it = oldest.memTable.iterator()) {
+                            flusher.flush(it);
+                        }
+                        success = true;
+                        LOG.info("Flush succeed, {} mem tables left", queued.size() - 1);
                         break;
+                    } catch (Exception ex) {
+                        LOG.error("Flush failed, retry times: {}, max retries: {}", i, config.getMaxFlushRetries(), ex);
                     }
                 }
-            }
+                if (!success) {
+                    isSnapshotFlushing.set(false);
+                    return;
+                }
 
-            // 3. Clear the snapshot.
-            if (success) {
-                snapshot = null;
-                isSnapshotFlushing.compareAndSet(true, false);
+                // 2. Truncate the logs which are durable in disk file now, and drop the table.
+                if (wal != null) {
+                    wal.truncate(oldest.rolledLogId);
+                }
+                lock.writeLock().lock();
+                try {
+                    List<ImmutableMemTable> remaining = new ArrayList<>(snapshots);
+                    remaining.remove(oldest);
+                    snapshots = remaining;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                // The scans still over the table keep it until they're closed.
+                oldest.memTable.release();
+                synchronized (flushedSignal) {
+                    flushedSignal.notifyAll();
+                }
             }
         }
     }
 
     public static class IteratorWrapper implements SeekIter<KeyValue> {
-        private SortedMap<KeyValue, KeyValue> sortedMap;
+        private NavigableMap<KeyValue, KeyValue> sortedMap;
         private Iterator<KeyValue> it;
+        private Iterator<KeyValue> reverseIt;
 
-        public IteratorWrapper(SortedMap<KeyValue, KeyValue> sortedMap) {
+        public IteratorWrapper(NavigableMap<KeyValue, KeyValue> sortedMap) {
             this.sortedMap = sortedMap;
             this.it = sortedMap.values().iterator();
         }
@@ -152,21 +425,42 @@ public class MemStore implements Closeable {
         public void seekTo(KeyValue target) throws IOException {
             it = sortedMap.tailMap(target).values().iterator();
         }
+
+        @Override
+        public void seekToLast() throws IOException {
+            reverseIt = sortedMap.descendingMap().values().iterator();
+        }
+
+        @Override
+        public void seekForPrev(KeyValue target) throws IOException {
+            reverseIt = sortedMap.headMap(target, false).descendingMap().values().iterator();
+        }
+
+        @Override
+        public boolean hasPrev() throws IOException {
+            return reverseIt != null && reverseIt.hasNext();
+        }
+
+        @Override
+        public KeyValue prev() throws IOException {
+            return reverseIt.next();
+        }
     }
 
     public class MemStoreIter implements SeekIter<KeyValue> {
         private MultiIter it;
 
-        public MemStoreIter(NavigableMap<KeyValue, KeyValue> kvSet,
-                            NavigableMap<KeyValue, KeyValue> snapshot) throws IOException {
-            List<IteratorWrapper> inputs = new ArrayList<>();
-            if (kvSet != null && kvSet.size() > 0) {
-                inputs.add(new IteratorWrapper(kvMap));
+        public MemStoreIter(MemTable kvSet, List<MemTable> snapshots) throws IOException {
+            List<SeekIter<KeyValue>> inputs = new ArrayList<>();
+            if (kvSet != null && !kvSet.isEmpty()) {
+                inputs.add(kvSet.iterator());
             }
-            if (snapshot != null && snapshot.size() > 0) {
-                inputs.add(new IteratorWrapper(snapshot));
+            for (MemTable snapshot : snapshots) {
+                if (!snapshot.isEmpty()) {
+                    inputs.add(snapshot.iterator());
+                }
             }
-            it = new MultiIter(inputs.toArray(new IteratorWrapper[0]));
+            it = new MultiIter(inputs, config.getKeyComparator());
         }
 
         @Override
@@ -183,6 +477,31 @@ public class MemStore implements Closeable {
         public void seekTo(KeyValue target) throws IOException {
             it.seekTo(target);
         }
+
+        @Override
+        public void seekToLast() throws IOException {
+            it.seekToLast();
+        }
+
+        @Override
+        public void seekForPrev(KeyValue target) throws IOException {
+            it.seekForPrev(target);
+        }
+
+        @Override
+        public boolean hasPrev() throws IOException {
+            return it.hasPrev();
+        }
+
+        @Override
+        public KeyValue prev() throws IOException {
+            return it.prev();
+        }
+
+        @Override
+        public void close() throws IOException {
+            it.close();
+        }
     }
 
 }
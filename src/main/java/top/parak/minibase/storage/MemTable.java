@@ -0,0 +1,53 @@
+package top.parak.minibase.storage;
+
+import top.parak.minibase.KeyValue;
+
+/**
+ * Mem table, the sorted in-memory container of a {@link MemStore}.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public interface MemTable {
+
+    /**
+     * Add a KeyValue into the table.
+     *
+     * @param kv the KeyValue to add
+     * @return the change of the data size in bytes
+     */
+    long add(KeyValue kv);
+
+    /**
+     * Get the newest version of the specified key whose sequence id is not greater than
+     * the specified one, which may be a {@link top.parak.minibase.Op#Delete}.
+     *
+     * @param key        the byte array of the key
+     * @param sequenceId the largest visible sequence id
+     * @return the KeyValue, or {@code null} if there is no such version
+     */
+    KeyValue get(byte[] key, long sequenceId);
+
+    /**
+     * Check if the table has no KeyValue.
+     *
+     * @return true if the table is empty
+     */
+    boolean isEmpty();
+
+    /**
+     * Create an iterator over the KeyValues in sorted order.
+     *
+     * @return iterator for fetching KeyValue one by one
+     */
+    SeekIter<KeyValue> iterator();
+
+    /**
+     * Release the table once it's dropped by the {@link MemStore}. The memory it holds may
+     * be freed as soon as the iterators over it are closed too, and it can't be written to
+     * afterwards.
+     */
+    default void release() {
+    }
+
+}
@@ -0,0 +1,54 @@
+package top.parak.minibase.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merge compaction strategy.
+ *
+ * <p>Once there are more disk files than the max, merges the files whose key ranges overlap
+ * some other file into one file.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class MergeCompactionStrategy implements CompactionStrategy {
+
+    private final int maxDiskFiles;
+
+    public MergeCompactionStrategy(int maxDiskFiles) {
+        this.maxDiskFiles = maxDiskFiles;
+    }
+
+    @Override
+    public Compaction pick(List<DiskFile> diskFiles) {
+        if (diskFiles.size() <= maxDiskFiles) {
+            return null;
+        }
+        return new Compaction(pickFilesToCompact(diskFiles), 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public Compaction pickAll(List<DiskFile> diskFiles) {
+        return new Compaction(new ArrayList<>(diskFiles), 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Pick the files whose key ranges overlap some other file. A file overlapping no other
+     * file holds the only versions of its keys, so merging it gains nothing but a lower file
+     * count, which is only worth it when there's nothing else to merge.
+     */
+    private List<DiskFile> pickFilesToCompact(List<DiskFile> diskFiles) {
+        List<DiskFile> overlapping = new ArrayList<>();
+        for (DiskFile diskFile : diskFiles) {
+            for (DiskFile other : diskFiles) {
+                if (other != diskFile && diskFile.overlaps(other)) {
+                    overlapping.add(diskFile);
+                    break;
+                }
+            }
+        }
+        return overlapping.size() >= 2 ? overlapping : new ArrayList<>(diskFiles);
+    }
+
+}
@@ -0,0 +1,43 @@
+package top.parak.minibase.storage;
+
+import top.parak.minibase.PrefixExtractor;
+import top.parak.minibase.toolkit.BloomFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prefix collector.
+ *
+ * <p>Collects the distinct prefixes of the keys appended in order, for the prefix bloom
+ * filters of a block or a whole disk file. Keys sharing a prefix are adjacent in order, so
+ * comparing with the last collected prefix is enough to drop the duplicates.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+class PrefixCollector {
+
+    private final PrefixExtractor extractor;
+    private final List<byte[]>    prefixes = new ArrayList<>();
+    private byte[]                lastPrefix;
+
+    PrefixCollector(PrefixExtractor extractor) {
+        this.extractor = extractor;
+    }
+
+    void add(byte[] key) {
+        byte[] prefix = extractor.extract(key);
+        if (prefix != null && !Arrays.equals(prefix, lastPrefix)) {
+            prefixes.add(prefix);
+            lastPrefix = prefix;
+        }
+    }
+
+    byte[] generateBloomFilter() {
+        BloomFilter bloomFilter = new BloomFilter(DiskStore.BLOOM_FILTER_HASH_COUNT, DiskStore.BLOOM_FILTER_BITS_PER_KEY);
+        return bloomFilter.generate(prefixes.toArray(new byte[0][]));
+    }
+
+}
@@ -7,6 +7,11 @@ import java.io.IOException;
 /**
  * Seek iterator.
  *
+ * <p>Iterates forwards by {@link #hasNext()} and {@link #next()} from the beginning or a
+ * {@link #seekTo} position, or backwards by {@link #hasPrev()} and {@link #prev()} from a
+ * {@link #seekToLast()} or {@link #seekForPrev} position. The direction is chosen by the
+ * last seek, and iterating the other way is undefined until the next seek.</p>
+ *
  * @author Khighness
  * @since 2023-08-04
  */
@@ -20,4 +25,35 @@ public interface SeekIter<KeyValue> extends Iter<KeyValue> {
      */
     void seekTo(KeyValue target) throws IOException;
 
+    /**
+     * Seek backwards to the last KeyValue.
+     *
+     * @throws IOException if an IOException occurs
+     */
+    void seekToLast() throws IOException;
+
+    /**
+     * Seek backwards to the largest KeyValue which is less than the given value.
+     *
+     * @param target the specified KeyValue
+     * @throws IOException if an IOException occurs
+     */
+    void seekForPrev(KeyValue target) throws IOException;
+
+    /**
+     * Returns {@code true} if the backward iteration has more elements.
+     *
+     * @return {@code true} if the backward iteration has more elements
+     * @throws IOException if an IOException occurs
+     */
+    boolean hasPrev() throws IOException;
+
+    /**
+     * Returns the previous element in the backward iteration.
+     *
+     * @return the previous element in the backward iteration
+     * @throws IOException if an IOException occurs
+     */
+    KeyValue prev() throws IOException;
+
 }
@@ -0,0 +1,87 @@
+package top.parak.minibase.storage;
+
+import top.parak.minibase.KeyComparator;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.storage.DiskStore.MultiIter;
+import top.parak.minibase.toolkit.Bytes;
+import top.parak.minibase.toolkit.Requires;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Sharded mem table.
+ *
+ * <p>KeyValues are partitioned by the hash of their keys into independent tables, so that
+ * concurrent writers rarely contend on the same skip list. All the versions of a key live
+ * in the same shard, and the iterator merges the shards back into one sorted stream, for
+ * scans and flushes alike.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class ShardedMemTable implements MemTable {
+
+    private final MemTable[]    shards;
+    private final KeyComparator comparator;
+
+    public ShardedMemTable(int shardCount, Supplier<MemTable> shardFactory, KeyComparator comparator) {
+        Requires.requireTrue(shardCount > 0, "shardCount must be positive");
+
+        this.comparator = comparator;
+        this.shards = new MemTable[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = shardFactory.get();
+        }
+    }
+
+    private MemTable shardOf(byte[] key) {
+        return shards[(Bytes.hash(key) & Integer.MAX_VALUE) % shards.length];
+    }
+
+    @Override
+    public long add(KeyValue kv) {
+        return shardOf(kv.getKey()).add(kv);
+    }
+
+    @Override
+    public KeyValue get(byte[] key, long sequenceId) {
+        return shardOf(key).get(key, sequenceId);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (MemTable shard : shards) {
+            if (!shard.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SeekIter<KeyValue> iterator() {
+        List<SeekIter<KeyValue>> iterList = new ArrayList<>(shards.length);
+        for (MemTable shard : shards) {
+            if (!shard.isEmpty()) {
+                iterList.add(shard.iterator());
+            }
+        }
+        try {
+            return new MultiIter(iterList, comparator);
+        } catch (IOException e) {
+            // Mem table iterators never touch the disk.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void release() {
+        for (MemTable shard : shards) {
+            shard.release();
+        }
+    }
+
+}
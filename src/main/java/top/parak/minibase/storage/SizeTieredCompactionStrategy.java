@@ -0,0 +1,74 @@
+package top.parak.minibase.storage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Size-tiered compaction strategy.
+ *
+ * <p>Orders the disk files from the newest to the oldest, and merges a run of adjacent files
+ * of similar size into one file: a file joins the run if it's not larger than the run so far
+ * plus the size ratio, and the run is merged once it's at least the min merge width long.
+ * So every file is rewritten about once per tier, i.e. a logarithmic number of times in the
+ * data size, at the cost of more files to read than a leveled store.</p>
+ *
+ * <p>If no run qualifies but there are more files than the max, the newest files are merged
+ * to bring the count back down.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class SizeTieredCompactionStrategy implements CompactionStrategy {
+
+    private final int sizeRatio;
+    private final int minMergeWidth;
+    private final int maxDiskFiles;
+
+    /**
+     * @param sizeRatio     the percentage by which a file may be larger than the run to join it
+     * @param minMergeWidth the min number of files to merge at once
+     * @param maxDiskFiles  the max number of disk files
+     */
+    public SizeTieredCompactionStrategy(int sizeRatio, int minMergeWidth, int maxDiskFiles) {
+        this.sizeRatio = sizeRatio;
+        this.minMergeWidth = Math.max(2, minMergeWidth);
+        this.maxDiskFiles = maxDiskFiles;
+    }
+
+    private static List<DiskFile> newestFirst(List<DiskFile> diskFiles) {
+        List<DiskFile> sorted = new ArrayList<>(diskFiles);
+        sorted.sort(Comparator.comparingLong(DiskFile::getMaxSequenceId).reversed());
+        return sorted;
+    }
+
+    @Override
+    public Compaction pick(List<DiskFile> diskFiles) {
+        if (diskFiles.size() < minMergeWidth) {
+            return null;
+        }
+        List<DiskFile> sorted = newestFirst(diskFiles);
+        for (int start = 0; start + minMergeWidth <= sorted.size(); start++) {
+            long runSize = sorted.get(start).getFileSize();
+            int end = start + 1;
+            while (end < sorted.size() && sorted.get(end).getFileSize() * 100 <= runSize * (100 + sizeRatio)) {
+                runSize += sorted.get(end).getFileSize();
+                end++;
+            }
+            if (end - start >= minMergeWidth) {
+                return new Compaction(new ArrayList<>(sorted.subList(start, end)), 0, Long.MAX_VALUE);
+            }
+        }
+        if (sorted.size() > maxDiskFiles) {
+            int width = Math.max(minMergeWidth, sorted.size() - maxDiskFiles + 1);
+            return new Compaction(new ArrayList<>(sorted.subList(0, width)), 0, Long.MAX_VALUE);
+        }
+        return null;
+    }
+
+    @Override
+    public Compaction pickAll(List<DiskFile> diskFiles) {
+        return new Compaction(new ArrayList<>(diskFiles), 0, Long.MAX_VALUE);
+    }
+
+}
@@ -0,0 +1,50 @@
+package top.parak.minibase.storage;
+
+import top.parak.minibase.KeyComparator;
+import top.parak.minibase.KeyValue;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Heap mem table backed by a {@link ConcurrentSkipListMap}.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class SkipListMemTable implements MemTable {
+
+    private final KeyComparator                             comparator;
+    private final ConcurrentSkipListMap<KeyValue, KeyValue> kvMap;
+
+    public SkipListMemTable(KeyComparator comparator) {
+        this.comparator = comparator;
+        this.kvMap = new ConcurrentSkipListMap<>(KeyValue.comparator(comparator));
+    }
+
+    @Override
+    public long add(KeyValue kv) {
+        KeyValue prevKv;
+        if ((prevKv = kvMap.put(kv, kv)) == null) {
+            return kv.getSerializeSize();
+        } else {
+            return kv.getSerializeSize() - prevKv.getSerializeSize();
+        }
+    }
+
+    @Override
+    public KeyValue get(byte[] key, long sequenceId) {
+        KeyValue kv = kvMap.ceilingKey(KeyValue.createDelete(key, sequenceId));
+        return kv != null && kv.compareKey(key, comparator) == 0 ? kv : null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return kvMap.isEmpty();
+    }
+
+    @Override
+    public SeekIter<KeyValue> iterator() {
+        return new MemStore.IteratorWrapper(kvMap);
+    }
+
+}
@@ -0,0 +1,51 @@
+package top.parak.minibase.storage;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Snapshot registry, counting the live snapshots pinned on each sequence id.
+ *
+ * <p>The current read point is always treated as live, since every read without
+ * an explicit snapshot reads as of it.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class SnapshotRegistry {
+
+    private final ConcurrentSkipListMap<Long, Integer> refCounts = new ConcurrentSkipListMap<>();
+    private final LongSupplier                         readPoint;
+
+    public SnapshotRegistry(LongSupplier readPoint) {
+        this.readPoint = readPoint;
+    }
+
+    public void acquire(long sequenceId) {
+        refCounts.merge(sequenceId, 1, Integer::sum);
+    }
+
+    public void release(long sequenceId) {
+        refCounts.computeIfPresent(sequenceId, (seqId, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Get the sequence ids of all the live snapshots.
+     *
+     * @return an ascending copy of the live sequence ids
+     */
+    public NavigableSet<Long> getLiveSequenceIds() {
+        // Read the read point first: a snapshot pinned before the read point moves on is then always counted.
+        long currentReadPoint = readPoint.getAsLong();
+        NavigableSet<Long> liveSequenceIds = new TreeSet<>();
+        // Copy one by one, the bulk copy of a sorted set trusts its size, which a concurrent release shrinks.
+        for (Long sequenceId : refCounts.keySet()) {
+            liveSequenceIds.add(sequenceId);
+        }
+        liveSequenceIds.add(currentReadPoint);
+        return liveSequenceIds;
+    }
+
+}
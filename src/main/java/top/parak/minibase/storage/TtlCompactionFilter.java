@@ -0,0 +1,164 @@
+package top.parak.minibase.storage;
+
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.Op;
+import top.parak.minibase.toolkit.Bytes;
+import top.parak.minibase.toolkit.Requires;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Time-to-live compaction filter.
+ *
+ * <p>With a time to live, the store appends the write time to every value it puts, and
+ * strips it on read, see {@link #appendWriteTime(byte[], long)}. A value expires once it
+ * has lived longer than the time to live: reads hide it at once, and compactions remove it.
+ * The other values go on to the wrapped filter, if any, without the write time.</p>
+ *
+ * <p>The write time is part of the stored value, so a store must keep a time to live,
+ * or keep none, over its whole life. The data dir records which one it was written with,
+ * see {@link #checkValueFormat(String, boolean)}.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class TtlCompactionFilter implements CompactionFilter {
+
+    public static final int WRITE_TIME_SIZE = 8;
+
+    /**
+     * The file in the data dir recording whether the stored values carry a write time.
+     */
+    public static final String VALUE_FORMAT_FILE_NAME = "VALUE_FORMAT";
+
+    private static final String WITH_WRITE_TIME    = "write-time";
+    private static final String WITHOUT_WRITE_TIME = "plain";
+
+    private final long             ttlMs;
+    private final CompactionFilter filter;
+
+    public TtlCompactionFilter(long ttlMs) {
+        this(ttlMs, null);
+    }
+
+    /**
+     * @param ttlMs  the time to live in milliseconds
+     * @param filter the filter of the values not expired, or {@code null}
+     */
+    public TtlCompactionFilter(long ttlMs, CompactionFilter filter) {
+        Requires.requireTrue(ttlMs > 0, "ttlMs must be positive");
+        this.ttlMs = ttlMs;
+        this.filter = filter;
+    }
+
+    /**
+     * Check that the values of the data dir carry a write time exactly when a time to live
+     * is set, and record it on the first open. A data dir holding files but no record was
+     * written before the record existed, and so holds values without a write time.
+     *
+     * @param dataDir    the data dir
+     * @param ttlEnabled whether the store is opened with a time to live
+     * @throws IOException if the data dir was written with the other setting, or if an
+     *                     IOException occurs
+     */
+    public static void checkValueFormat(String dataDir, boolean ttlEnabled) throws IOException {
+        File dir = new File(dataDir);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create data dir " + dataDir);
+        }
+        String expected = ttlEnabled ? WITH_WRITE_TIME : WITHOUT_WRITE_TIME;
+        File file = new File(dir, VALUE_FORMAT_FILE_NAME);
+        String actual;
+        if (file.exists()) {
+            actual = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+        } else {
+            String[] written = dir.list((d, name) -> name.startsWith("data.") || name.startsWith("wal."));
+            actual = written != null && written.length > 0 ? WITHOUT_WRITE_TIME : expected;
+            File tempFile = new File(dir, VALUE_FORMAT_FILE_NAME + DiskStore.FILE_NAME_TMP_SUFFIX);
+            Files.write(tempFile.toPath(), actual.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (!actual.equals(expected)) {
+            throw new IOException("Data dir " + dataDir + " holds values " + (ttlEnabled ? "without" : "with")
+                    + " a write time, it can't be opened " + (ttlEnabled ? "with" : "without") + " a time to live");
+        }
+    }
+
+    /**
+     * Append the write time to the value, as 8 big-endian bytes.
+     *
+     * @param value     the value
+     * @param writeTime the write time in milliseconds
+     * @return the value to store
+     */
+    public static byte[] appendWriteTime(byte[] value, long writeTime) {
+        return Bytes.toBytes(value, Bytes.toBytes(writeTime));
+    }
+
+    /**
+     * Check whether the value has expired.
+     *
+     * @param value the stored value, with its write time
+     * @param now   the current time in milliseconds
+     * @return true if the value has lived longer than the time to live
+     */
+    public boolean isExpired(byte[] value, long now) {
+        return now - getWriteTime(value) > ttlMs;
+    }
+
+    /**
+     * Check whether the KeyValue is a put whose value has expired.
+     */
+    public boolean isExpired(KeyValue kv, long now) {
+        return kv.getOp() == Op.Put && isExpired(kv.getValue(), now);
+    }
+
+    /**
+     * Strip the write time off the value of a KeyValue read from the store.
+     *
+     * @param kv the put read from the store
+     * @return the KeyValue with the value as it was put
+     */
+    public static KeyValue stripWriteTime(KeyValue kv) {
+        return KeyValue.create(kv.getKey(), stripWriteTime(kv.getValue()), kv.getOp(), kv.getSequenceId());
+    }
+
+    private static byte[] stripWriteTime(byte[] value) {
+        requireWriteTime(value);
+        return Arrays.copyOf(value, value.length - WRITE_TIME_SIZE);
+    }
+
+    private static long getWriteTime(byte[] value) {
+        requireWriteTime(value);
+        return Bytes.toLong(value, value.length - WRITE_TIME_SIZE);
+    }
+
+    private static void requireWriteTime(byte[] value) {
+        // The data dir is checked on open, so a shorter value is corrupt.
+        if (value.length < WRITE_TIME_SIZE) {
+            throw new IllegalStateException("Value of " + value.length + " bytes has no write time");
+        }
+    }
+
+    @Override
+    public byte[] filter(int level, byte[] key, byte[] value) {
+        if (isExpired(value, System.currentTimeMillis())) {
+            return null;
+        }
+        if (filter == null) {
+            return value;
+        }
+        byte[] userValue = stripWriteTime(value);
+        byte[] filtered = filter.filter(level, key, userValue);
+        if (filtered == null) {
+            return null;
+        }
+        return filtered == userValue ? value : appendWriteTime(filtered, getWriteTime(value));
+    }
+
+}
@@ -0,0 +1,433 @@
+package top.parak.minibase.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.parak.minibase.Iter;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.config.WalSyncMode;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Write-ahead log.
+ *
+ * <p>Encode record structure</p>
+ * <pre>
+ *     +-------------+-------------+-------------+-----+-------------+
+ *     |  body len   |  checksum   |    kv 1     | ... |    kv n     |
+ *     +-------------+-------------+-------------+-----+-------------+
+ *     |      4      |      4      |             body len            |
+ *     +-------------+-------------+---------------------------------+
+ * </pre>
+ *
+ * <p>All the KeyValues of one record are replayed or dropped together, so a record is
+ * the unit of atomicity for a write batch.</p>
+ *
+ * <p>Concurrent writers are merged by group commit: every writer enqueues its record and
+ * then competes for the write lock, the winner drains the whole queue with one
+ * {@link FileChannel#write} and at most one {@link FileChannel#force}, and the other
+ * writers find their records already committed once they get the lock.</p>
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    public static final int BODY_LEN_SIZE = 4;
+    public static final int CHECKSUM_SIZE = 4;
+
+    private static final Pattern LOG_FILE_RE = Pattern.compile("wal\\.([0-9]+)");
+
+    private final String        dataDir;
+    private final WalSyncMode   syncMode;
+    private final long          syncIntervalMs;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private List<Record>     pending = new ArrayList<>();
+    private List<Long>       replayLogIds;
+    private FileChannel      channel;
+    private volatile long    currentLogId;
+    private volatile boolean dirty = false;
+    private volatile boolean running = true;
+    private Thread           syncer;
+
+    public WriteAheadLog(Config config) {
+        this.dataDir = config.getDataDir();
+        this.syncMode = config.getWalSyncMode();
+        this.syncIntervalMs = config.getWalSyncIntervalMs();
+    }
+
+    private static class Record {
+        final byte[]         bytes;
+        volatile boolean     done = false;
+        volatile IOException error;
+
+        Record(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private File[] listLogFiles() {
+        File[] files = new File(dataDir).listFiles(file -> LOG_FILE_RE.matcher(file.getName()).matches());
+        return files == null ? new File[0] : files;
+    }
+
+    private static long parseLogId(File file) {
+        Matcher matcher = LOG_FILE_RE.matcher(file.getName());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private File getLogFile(long logId) {
+        return new File(dataDir, String.format("wal.%020d", logId));
+    }
+
+    /**
+     * Open the write-ahead log. The existing log files are kept for {@link #replay()},
+     * and new records go into a fresh log file.
+     *
+     * @throws IOException if an IOException occurs
+     */
+    public void open() throws IOException {
+        File dir = new File(dataDir);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create data dir " + dataDir);
+        }
+
+        long maxLogId = -1;
+        replayLogIds = new ArrayList<>();
+        for (File file : listLogFiles()) {
+            long logId = parseLogId(file);
+            replayLogIds.add(logId);
+            maxLogId = Math.max(maxLogId, logId);
+        }
+        replayLogIds.sort(Long::compare);
+        LOG.info("Open write-ahead log, logs to replay: {}", replayLogIds);
+
+        currentLogId = maxLogId + 1;
+        channel = openChannel(currentLogId);
+
+        if (syncMode == WalSyncMode.Interval) {
+            syncer = new Thread(this::syncPeriodically, "mstore-wal-syncer");
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+    }
+
+    private FileChannel openChannel(long logId) throws IOException {
+        return FileChannel.open(getLogFile(logId).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Create an iterator over all the records left by the previous run, in write order.
+     * A torn or corrupted tail of a log file is ignored.
+     *
+     * @return iterator for fetching KeyValue one by one
+     */
+    public Iter<KeyValue> replay() {
+        return new ReplayIter(new ArrayList<>(replayLogIds));
+    }
+
+    /**
+     * Append a KeyValue to the log, and return once it has been written according
+     * to the configured {@link WalSyncMode}.
+     *
+     * @param kv the KeyValue to append
+     * @throws IOException if the log write failed
+     */
+    public void append(KeyValue kv) throws IOException {
+        append(Collections.singletonList(kv));
+    }
+
+    /**
+     * Append KeyValues to the log as one record, and return once it has been written
+     * according to the configured {@link WalSyncMode}.
+     *
+     * @param kvs the KeyValues to append
+     * @throws IOException if the log write failed
+     */
+    public void append(List<KeyValue> kvs) throws IOException {
+        int bodyLen = 0;
+        for (KeyValue kv : kvs) {
+            bodyLen += kv.getSerializeSize();
+        }
+        byte[] bytes = new byte[BODY_LEN_SIZE + CHECKSUM_SIZE + bodyLen];
+        int pos = BODY_LEN_SIZE + CHECKSUM_SIZE;
+        for (KeyValue kv : kvs) {
+            byte[] kvBytes = kv.serialize();
+            System.arraycopy(kvBytes, 0, bytes, pos, kvBytes.length);
+            pos += kvBytes.length;
+        }
+
+        Checksum crc32 = new CRC32();
+        crc32.update(bytes, BODY_LEN_SIZE + CHECKSUM_SIZE, bodyLen);
+        System.arraycopy(Bytes.toBytes(bodyLen), 0, bytes, 0, BODY_LEN_SIZE);
+        System.arraycopy(Bytes.toBytes((int) crc32.getValue()), 0, bytes, BODY_LEN_SIZE, CHECKSUM_SIZE);
+
+        Record record = new Record(bytes);
+        synchronized (this) {
+            pending.add(record);
+        }
+
+        writeLock.lock();
+        try {
+            if (!record.done) {
+                groupCommit();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (record.error != null) {
+            throw new IOException("Failed to append write-ahead log", record.error);
+        }
+    }
+
+    private void groupCommit() {
+        List<Record> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int totalSize = 0;
+        for (Record record : batch) {
+            totalSize += record.bytes.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(totalSize);
+        for (Record record : batch) {
+            buf.put(record.bytes);
+        }
+        buf.flip();
+
+        IOException error = null;
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            if (syncMode == WalSyncMode.EveryWrite) {
+                channel.force(false);
+            } else {
+                dirty = true;
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        for (Record record : batch) {
+            record.error = error;
+            record.done = true;
+        }
+    }
+
+    private void syncPeriodically() {
+        while (running) {
+            try {
+                Thread.sleep(syncIntervalMs);
+                sync();
+            } catch (IOException e) {
+                LOG.error("Sync write-ahead log failed", e);
+            } catch (InterruptedException ie) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Force all the written records to disk.
+     *
+     * @throws IOException if an IOException occurs
+     */
+    public void sync() throws IOException {
+        writeLock.lock();
+        try {
+            if (dirty && channel.isOpen()) {
+                channel.force(false);
+                dirty = false;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Switch to a new log file. Must be called while no writer is appending, so that
+     * the returned log and its predecessors cover exactly the data written so far.
+     *
+     * @return the id of the last log before switching
+     * @throws IOException if an IOException occurs
+     */
+    public long roll() throws IOException {
+        writeLock.lock();
+        try {
+            groupCommit();
+            channel.force(false);
+            channel.close();
+            dirty = false;
+
+            long rolledLogId = currentLogId;
+            currentLogId = rolledLogId + 1;
+            channel = openChannel(currentLogId);
+            return rolledLogId;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Delete all the log files up to the given log id, once their data has been
+     * made durable in disk files.
+     *
+     * @param logId the last log id to delete (inclusive)
+     */
+    public void truncate(long logId) {
+        for (File file : listLogFiles()) {
+            if (parseLogId(file) <= logId) {
+                if (file.delete()) {
+                    LOG.info("Truncate write-ahead log {}", file.getName());
+                } else {
+                    LOG.error("Failed to delete write-ahead log {}", file.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete all the log files left by the previous run, once all their records have been
+     * made durable in disk files.
+     */
+    public void truncateReplayed() {
+        if (!replayLogIds.isEmpty()) {
+            truncate(replayLogIds.get(replayLogIds.size() - 1));
+            replayLogIds.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (syncer != null) {
+            syncer.interrupt();
+        }
+        writeLock.lock();
+        try {
+            if (channel != null && channel.isOpen()) {
+                groupCommit();
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private class ReplayIter implements Iter<KeyValue> {
+        private final List<Long> logIds;
+        private int             logIndex = 0;
+        private DataInputStream in;
+        private long            remaining;
+        private byte[]          body;
+        private int             bodyPos;
+
+        ReplayIter(List<Long> logIds) {
+            this.logIds = logIds;
+        }
+
+        private byte[] readRecord() throws IOException {
+            try {
+                int bodyLen = in.readInt();
+                int checksum = in.readInt();
+                remaining -= BODY_LEN_SIZE + CHECKSUM_SIZE;
+                // The length of a torn or corrupted record can't be trusted to allocate the body.
+                if (bodyLen <= 0 || bodyLen > remaining) {
+                    if (bodyLen != 0) {
+                        LOG.warn("Write-ahead log {} has a record of invalid length {}, ignore the rest",
+                                logIds.get(logIndex - 1), bodyLen);
+                    }
+                    return null;
+                }
+                byte[] bytes = new byte[bodyLen];
+                in.readFully(bytes);
+                remaining -= bodyLen;
+
+                Checksum crc32 = new CRC32();
+                crc32.update(bytes, 0, bodyLen);
+                if ((int) crc32.getValue() != checksum) {
+                    LOG.warn("Write-ahead log {} has a corrupted record, ignore the rest", logIds.get(logIndex - 1));
+                    return null;
+                }
+                return bytes;
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        private boolean advance() throws IOException {
+            while (body == null || bodyPos >= body.length) {
+                if (in == null) {
+                    if (logIndex >= logIds.size()) {
+                        return false;
+                    }
+                    File file = getLogFile(logIds.get(logIndex++));
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    remaining = file.length();
+                }
+                body = readRecord();
+                bodyPos = 0;
+                if (body == null) {
+                    in.close();
+                    in = null;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return advance();
+        }
+
+        @Override
+        public KeyValue next() throws IOException {
+            if (!advance()) {
+                return null;
+            }
+            KeyValue kv = KeyValue.deserialize(body, bodyPos);
+            bodyPos += kv.getSerializeSize();
+            return kv;
+        }
+
+        @Override
+        public void close() throws IOException {
+            logIndex = logIds.size();
+            body = null;
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+    }
+
+}
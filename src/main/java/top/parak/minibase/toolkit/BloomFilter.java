@@ -42,6 +42,22 @@ public class BloomFilter {
         this.bitsPerKey = bitsPerKey;
     }
 
+    /**
+     * Create a BloomFilter instance over a generated result.
+     *
+     * @param k      the number of hash function
+     * @param result the result generated by {@link #generate(byte[][])}
+     */
+    public BloomFilter(int k, byte[] result) {
+        Requires.requireTrue(k > 0, "k must be positive");
+        Requires.requireNotNull(result);
+
+        this.k = k;
+        this.bitsPerKey = 0;
+        this.result = result;
+        this.bitLen = result.length << 3;
+    }
+
     /**
      * Generate the bloom filter corresponding to the given keys.
      *
@@ -0,0 +1,57 @@
+package top.parak.minibase.toolkit;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBuffer util.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public final class ByteBuffers {
+
+    /**
+     * Release the memory or the mapping of a direct buffer right away, instead of waiting
+     * for it to be garbage collected. The buffer must not be accessed afterwards.
+     *
+     * @param buffer the direct buffer
+     * @return true if released, false if not supported by the JVM
+     */
+    public static boolean free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return false;
+        }
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (NoSuchMethodException e) {
+            // Java 8
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner == null) {
+                    return false;
+                }
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+                return true;
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                return false;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private ByteBuffers() {
+    }
+}
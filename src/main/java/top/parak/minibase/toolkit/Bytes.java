@@ -1,6 +1,11 @@
 package top.parak.minibase.toolkit;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteOrder;
 
 /**
  * Bytes util.
@@ -80,6 +85,19 @@ public final class Bytes {
         return x;
     }
 
+    public static int toInt(byte[] a, int offset) {
+        return (a[offset] << 24) & 0xFF000000 | (a[offset + 1] << 16) & 0x00FF0000
+                | (a[offset + 2] << 8) & 0x0000FF00 | a[offset + 3] & 0x000000FF;
+    }
+
+    public static long toLong(byte[] a, int offset) {
+        long x = 0;
+        for (int i = 0; i < 8; i++) {
+            x = (x << 8) | (a[offset + i] & 0xFFL);
+        }
+        return x;
+    }
+
     public static byte[] slice(byte[] buf, int offset, int len) throws IOException {
         if (buf == null) {
             throw new IOException("buf is null");
@@ -104,18 +122,117 @@ public final class Bytes {
         return h;
     }
 
+    public static boolean startsWith(byte[] a, byte[] prefix) {
+        return a.length >= prefix.length && compare(a, 0, prefix.length, prefix, 0, prefix.length) == 0;
+    }
+
     public static int compare(byte[] a, byte[] b) {
         if (a == b) return 0;
         if (a == null) return -1;
         if (b == null) return 1;
-        for (int i = 0, j = 0; i < a.length && j < b.length; i++, j++) {
-            int x = a[i] & 0xFF;
-            int y = b[i] & 0xFF;
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    /**
+     * Compare two byte array regions lexicographically as unsigned bytes, 8 bytes at a time
+     * as unsigned big-endian longs where {@code sun.misc.Unsafe} and unaligned memory access
+     * are available, and byte by byte otherwise.
+     *
+     * @throws ArrayIndexOutOfBoundsException if a region is out of its array
+     */
+    public static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        // Unsafe reads don't check the bounds.
+        if ((aOffset | aLength | bOffset | bLength) < 0 || aOffset > a.length - aLength || bOffset > b.length - bLength) {
+            throw new ArrayIndexOutOfBoundsException("region out of bounds, a: " + aOffset + "+" + aLength + "/" + a.length
+                    + ", b: " + bOffset + "+" + bLength + "/" + b.length);
+        }
+        int minLength = Math.min(aLength, bLength);
+        int i = 0;
+        if (UnsafeComparer.GET_LONG != null) {
+            for (; i + 8 <= minLength; i += 8) {
+                long x = UnsafeComparer.getLongBigEndian(a, aOffset + i);
+                long y = UnsafeComparer.getLongBigEndian(b, bOffset + i);
+                if (x != y) {
+                    return (x + Long.MIN_VALUE) < (y + Long.MIN_VALUE) ? -1 : 1;
+                }
+            }
+        }
+        for (; i < minLength; i++) {
+            int x = a[aOffset + i] & 0xFF;
+            int y = b[bOffset + i] & 0xFF;
             if (x != y) {
                 return x - y;
             }
         }
-        return a.length - b.length;
+        return aLength - bLength;
+    }
+
+    /**
+     * Reads longs out of byte arrays through {@code sun.misc.Unsafe}, which is looked up
+     * reflectively like in {@link ByteBuffers#free(java.nio.ByteBuffer)}, so that nothing
+     * is compiled against the internal API.
+     */
+    private static final class UnsafeComparer {
+
+        /**
+         * {@code Unsafe.getLong(Object, long)} bound to the Unsafe instance, or null if the
+         * long reads are not available or not safe on this platform.
+         */
+        static final MethodHandle GET_LONG;
+        static final long         BYTE_ARRAY_BASE_OFFSET;
+        static final boolean      LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+        static {
+            MethodHandle getLong = null;
+            long baseOffset = 0;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Object unsafe = theUnsafe.get(null);
+                int indexScale = (Integer) unsafeClass.getMethod("arrayIndexScale", Class.class).invoke(unsafe, byte[].class);
+                // The offsets of the reads are arbitrary, so most of them are unaligned, which
+                // some CPUs don't support at all.
+                if (indexScale == 1 && unalignedAccess()) {
+                    baseOffset = (Integer) unsafeClass.getMethod("arrayBaseOffset", Class.class).invoke(unsafe, byte[].class);
+                    getLong = MethodHandles.lookup()
+                            .unreflect(unsafeClass.getMethod("getLong", Object.class, long.class))
+                            .bindTo(unsafe);
+                }
+            } catch (Throwable t) {
+                getLong = null;
+            }
+            GET_LONG = getLong;
+            BYTE_ARRAY_BASE_OFFSET = baseOffset;
+        }
+
+        /**
+         * Check whether the CPU supports unaligned memory access, by asking the JDK on Java 8,
+         * whose {@code java.nio.Bits} is still accessible, and by the CPU architecture after.
+         */
+        private static boolean unalignedAccess() {
+            if (System.getProperty("java.specification.version", "").startsWith("1.")) {
+                try {
+                    Method unaligned = Class.forName("java.nio.Bits").getDeclaredMethod("unaligned");
+                    unaligned.setAccessible(true);
+                    return (Boolean) unaligned.invoke(null);
+                } catch (Throwable t) {
+                    // Fall back to the architecture.
+                }
+            }
+            String arch = System.getProperty("os.arch", "");
+            return arch.matches("^(i[3-6]86|x86(_64)?|x64|amd64|aarch64|ppc64le)$");
+        }
+
+        static long getLongBigEndian(byte[] bytes, int offset) {
+            long x;
+            try {
+                x = (long) GET_LONG.invokeExact((Object) bytes, BYTE_ARRAY_BASE_OFFSET + offset);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+            return LITTLE_ENDIAN ? Long.reverseBytes(x) : x;
+        }
     }
 
     private Bytes() {
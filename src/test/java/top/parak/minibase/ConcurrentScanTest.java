@@ -0,0 +1,203 @@
+package top.parak.minibase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.config.DiskFileReadMode;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests of many readers sharing the same disk files, while the files stay put and
+ * while compactions replace them, in both read modes with and without the block cache.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+@RunWith(Parameterized.class)
+public class ConcurrentScanTest {
+
+    private static final int KEY_COUNT = 2000;
+    private static final int READERS   = 8;
+    private static final int ROUNDS    = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DiskFileReadMode readMode;
+    private final long             blockCacheCapacity;
+
+    public ConcurrentScanTest(DiskFileReadMode readMode, long blockCacheCapacity) {
+        this.readMode = readMode;
+        this.blockCacheCapacity = blockCacheCapacity;
+    }
+
+    @Parameterized.Parameters(name = "{0}, block cache {1}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{
+                {DiskFileReadMode.Read, 0L},
+                {DiskFileReadMode.Mmap, 0L},
+                {DiskFileReadMode.Read, 1024 * 1024L},
+                {DiskFileReadMode.Mmap, 1024 * 1024L},
+        });
+    }
+
+    private static byte[] key(int i) throws IOException {
+        return Bytes.toBytes(String.format("k%08d", i));
+    }
+
+    private static byte[] value(int i, int round) throws IOException {
+        return Bytes.toBytes("v" + i + "-" + round);
+    }
+
+    private Config newConfig() throws IOException {
+        return new Config()
+                .setDataDir(folder.newFolder().getAbsolutePath())
+                .setMaxMemStoreSize(16 * 1024)
+                .setBlockCacheCapacity(blockCacheCapacity)
+                .setDiskFileReadMode(readMode);
+    }
+
+    /**
+     * Run the readers until all of them are done or failed, and fail with the first error.
+     */
+    private static void runAll(List<Thread> threads, Queue<Throwable> errors) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new AssertionError("Reader failed", errors.peek());
+        }
+    }
+
+    private static int scanAll(MiniBase db, int round) throws IOException {
+        int count = 0;
+        try (Iter<KeyValue> it = db.scan(Bytes.EMPTY_BYTES, Bytes.EMPTY_BYTES)) {
+            while (it.hasNext()) {
+                KeyValue kv = it.next();
+                if (round >= 0) {
+                    assertEquals(Bytes.toHex(value(count, round)), Bytes.toHex(kv.getValue()));
+                }
+                assertEquals(Bytes.toHex(key(count)), Bytes.toHex(kv.getKey()));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testConcurrentScanners() throws Exception {
+        MiniBase db = MStore.create(newConfig()).open();
+        try {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                db.put(key(i), value(i, 0));
+            }
+
+            Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            List<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < READERS; t++) {
+                final int seed = t;
+                readers.add(new Thread(() -> {
+                    try {
+                        for (int r = 0; r < 5; r++) {
+                            assertEquals(KEY_COUNT, scanAll(db, 0));
+                            int i = (seed * 997 + r * 131) % KEY_COUNT;
+                            assertEquals(Bytes.toHex(value(i, 0)), Bytes.toHex(db.get(key(i)).getValue()));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }));
+            }
+            runAll(readers, errors);
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testScanDuringCompaction() throws Exception {
+        Config config = newConfig();
+        MiniBase db = MStore.create(config).open();
+        try {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                db.put(key(i), value(i, 0));
+            }
+
+            // Overwrite all the keys round after round, which keeps flushing and compacting
+            // the files under the readers.
+            Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            AtomicBoolean writing = new AtomicBoolean(true);
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(() -> {
+                try {
+                    for (int r = 1; r <= ROUNDS; r++) {
+                        for (int i = 0; i < KEY_COUNT; i++) {
+                            db.put(key(i), value(i, r));
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    writing.set(false);
+                }
+            }));
+            for (int t = 0; t < READERS / 2; t++) {
+                final int seed = t;
+                threads.add(new Thread(() -> {
+                    try {
+                        List<byte[]> keys = new ArrayList<>();
+                        for (int i = seed; i < KEY_COUNT; i += KEY_COUNT / 50) {
+                            keys.add(key(i));
+                        }
+                        while (writing.get() && errors.isEmpty()) {
+                            assertEquals(KEY_COUNT, scanAll(db, -1));
+                            assertNotNull(db.get(key(seed)));
+                            for (KeyValue kv : db.multiGet(keys)) {
+                                assertNotNull(kv);
+                            }
+                            // A page stopped by its limit is closed by the caller.
+                            try (ResumableIter<KeyValue> page = db.scan(Bytes.EMPTY_BYTES, Bytes.EMPTY_BYTES,
+                                    new ScanOptions().setLimit(10))) {
+                                while (page.hasNext()) {
+                                    assertNotNull(page.next());
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }));
+            }
+            runAll(threads, errors);
+
+            assertEquals(KEY_COUNT, scanAll(db, ROUNDS));
+        } finally {
+            db.close();
+        }
+
+        // The compacted files are archived once the last reader releases them.
+        String[] archived = new File(config.getDataDir()).list((dir, name) -> name.endsWith(".archive"));
+        assertTrue("no compaction happened", archived != null && archived.length > 0);
+    }
+
+}
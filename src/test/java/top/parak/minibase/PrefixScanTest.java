@@ -0,0 +1,101 @@
+package top.parak.minibase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of prefix scans, which are only supported in the bytewise key order.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class PrefixScanTest {
+
+    /**
+     * Bytewise order of the reversed keys, in which the keys sharing a prefix aren't
+     * contiguous.
+     */
+    private static final KeyComparator REVERSED = (a, aOffset, aLength, b, bOffset, bLength) -> {
+        int minLength = Math.min(aLength, bLength);
+        for (int i = 1; i <= minLength; i++) {
+            int x = a[aOffset + aLength - i] & 0xFF;
+            int y = b[bOffset + bLength - i] & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return aLength - bLength;
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Config newConfig() throws IOException {
+        return new Config()
+                .setDataDir(folder.newFolder().getAbsolutePath())
+                .setMaxMemStoreSize(4 * 1024);
+    }
+
+    private static int count(Iter<KeyValue> it) throws IOException {
+        int count = 0;
+        try {
+            while (it.hasNext()) {
+                assertTrue(it.next().keyStartsWith(Bytes.toBytes("a")));
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    @Test
+    public void testPrefixScan() throws Exception {
+        MiniBase db = MStore.create(newConfig().setPrefixExtractor(PrefixExtractor.fixedLength(1))).open();
+        try {
+            for (int i = 0; i < 500; i++) {
+                db.put(Bytes.toBytes((i % 2 == 0 ? "a" : "b") + i), Bytes.toBytes("v" + i));
+            }
+            assertEquals(250, count(db.prefixScan(Bytes.toBytes("a"))));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testPrefixScanRejectedWithCustomComparator() throws Exception {
+        MiniBase db = MStore.create(newConfig().setKeyComparator(REVERSED)).open();
+        try {
+            db.put(Bytes.toBytes("a1"), Bytes.toBytes("v"));
+            db.prefixScan(Bytes.toBytes("a"));
+            fail("prefix scan with a custom comparator");
+        } catch (IllegalArgumentException expected) {
+            // The keys starting with the prefix aren't contiguous.
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testPrefixExtractorRejectedWithCustomComparator() throws Exception {
+        MStore store = MStore.create(newConfig()
+                .setKeyComparator(REVERSED)
+                .setPrefixExtractor(PrefixExtractor.fixedLength(1)));
+        try {
+            store.open().close();
+            fail("prefix extractor with a custom comparator");
+        } catch (IllegalArgumentException expected) {
+            // The prefix bloom filters could rule out files holding the prefix.
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package top.parak.minibase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import top.parak.minibase.config.CompactionStyle;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of reads as of a read point, explicit snapshots and the read point of every plain
+ * read, which must see the same versions however the files under them are compacted.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class SnapshotTest {
+
+    private static final int KEY_COUNT = 1000;
+    private static final int ROUNDS    = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] key(int i) throws IOException {
+        return Bytes.toBytes(String.format("k%06d", i));
+    }
+
+    private static byte[] value(int i, int round) throws IOException {
+        return Bytes.toBytes("v" + i + "-" + round);
+    }
+
+    private static int roundOf(KeyValue kv) {
+        String value = new String(kv.getValue());
+        return Integer.parseInt(value.substring(value.indexOf('-') + 1));
+    }
+
+    private Config newConfig() throws IOException {
+        return new Config()
+                .setDataDir(folder.newFolder().getAbsolutePath())
+                .setMaxMemStoreSize(16 * 1024)
+                .setCompactionStyle(CompactionStyle.Merge)
+                .setMaxDiskFiles(2);
+    }
+
+    private static int countArchived(Config config) {
+        String[] archived = new File(config.getDataDir()).list((dir, name) -> name.endsWith(".archive"));
+        return archived == null ? 0 : archived.length;
+    }
+
+    /**
+     * Wait for a compaction to archive some of the files, which happens as soon as no read
+     * holds them any longer.
+     */
+    private static void awaitCompaction(Config config) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (countArchived(config) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue("no compaction happened", countArchived(config) > 0);
+    }
+
+    private static void assertReads(MiniBase db, ReadOptions options, int round, boolean deleted) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add(key(i));
+            KeyValue kv = db.get(key(i), options);
+            if (deleted && i % 2 == 0) {
+                assertNull(kv);
+            } else {
+                assertNotNull("missing key " + i, kv);
+                assertEquals(Bytes.toHex(value(i, round)), Bytes.toHex(kv.getValue()));
+            }
+        }
+        List<KeyValue> kvs = db.multiGet(keys, options);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if (deleted && i % 2 == 0) {
+                assertNull(kvs.get(i));
+            } else {
+                assertEquals(Bytes.toHex(value(i, round)), Bytes.toHex(kvs.get(i).getValue()));
+            }
+        }
+        int count = 0;
+        try (Iter<KeyValue> it = db.scan(Bytes.EMPTY_BYTES, Bytes.EMPTY_BYTES, options)) {
+            while (it.hasNext()) {
+                assertEquals(round, roundOf(it.next()));
+                count++;
+            }
+        }
+        assertEquals(deleted ? KEY_COUNT / 2 : KEY_COUNT, count);
+    }
+
+    @Test
+    public void testSnapshotReadsAcrossCompaction() throws Exception {
+        Config config = newConfig();
+        MiniBase db = MStore.create(config).open();
+        try {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                db.put(key(i), value(i, 0));
+            }
+            Snapshot snapshot = db.getSnapshot();
+            ReadOptions options = new ReadOptions().setSnapshot(snapshot);
+
+            // Overwrite every key, and then delete half of them, which flushes and compacts
+            // the versions of the snapshot together with the newer ones.
+            for (int r = 1; r <= ROUNDS; r++) {
+                for (int i = 0; i < KEY_COUNT; i++) {
+                    db.put(key(i), value(i, r));
+                }
+            }
+            for (int i = 0; i < KEY_COUNT; i += 2) {
+                db.delete(key(i));
+            }
+            awaitCompaction(config);
+
+            assertReads(db, options, 0, false);
+            assertReads(db, new ReadOptions(), ROUNDS, true);
+            db.releaseSnapshot(snapshot);
+            assertReads(db, new ReadOptions(), ROUNDS, true);
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testScanKeepsItsReadPointAcrossCompaction() throws Exception {
+        Config config = newConfig();
+        MiniBase db = MStore.create(config).open();
+        try {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                db.put(key(i), value(i, 0));
+            }
+            try (Iter<KeyValue> it = db.scan(Bytes.EMPTY_BYTES, Bytes.EMPTY_BYTES)) {
+                for (int r = 1; r <= ROUNDS; r++) {
+                    for (int i = 0; i < KEY_COUNT; i++) {
+                        db.put(key(i), value(i, r));
+                    }
+                }
+                awaitCompaction(config);
+
+                int count = 0;
+                while (it.hasNext()) {
+                    assertEquals(0, roundOf(it.next()));
+                    count++;
+                }
+                assertEquals(KEY_COUNT, count);
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testPlainReadsDuringCompaction() throws Exception {
+        Config config = newConfig();
+        MiniBase db = MStore.create(config).open();
+        try {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                db.put(key(i), value(i, 0));
+            }
+
+            Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            AtomicBoolean writing = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int r = 1; r <= ROUNDS * 4; r++) {
+                        for (int i = 0; i < KEY_COUNT; i++) {
+                            db.put(key(i), value(i, r));
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    writing.set(false);
+                }
+            });
+            Thread reader = new Thread(() -> {
+                try {
+                    int[] lastRounds = new int[KEY_COUNT];
+                    for (int n = 0; writing.get() && errors.isEmpty(); n++) {
+                        // A key never goes back to an older round, nor disappears.
+                        int i = (n * 7919) % KEY_COUNT;
+                        KeyValue kv = db.get(key(i));
+                        assertNotNull("missing key " + i, kv);
+                        assertTrue(roundOf(kv) >= lastRounds[i]);
+                        lastRounds[i] = roundOf(kv);
+
+                        // The keys are written in order, so at any read point the rounds of
+                        // the keys never go up along the keys, and differ by one at most.
+                        if (n % 100 == 0) {
+                            int first = -1;
+                            int prev = Integer.MAX_VALUE;
+                            int count = 0;
+                            try (Iter<KeyValue> it = db.scan(Bytes.EMPTY_BYTES, Bytes.EMPTY_BYTES)) {
+                                while (it.hasNext()) {
+                                    int round = roundOf(it.next());
+                                    first = first < 0 ? round : first;
+                                    assertTrue(round <= prev && round >= first - 1);
+                                    prev = round;
+                                    count++;
+                                }
+                            }
+                            assertEquals(KEY_COUNT, count);
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            writer.start();
+            reader.start();
+            writer.join();
+            reader.join();
+            if (!errors.isEmpty()) {
+                throw new AssertionError("Read failed", errors.peek());
+            }
+            assertTrue("no compaction happened", countArchived(config) > 0);
+        } finally {
+            db.close();
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package top.parak.minibase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.storage.TtlCompactionFilter;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the time to live of the values, whose write time is stored with them.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class TtlTest {
+
+    private static final long TTL_MS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String s) throws IOException {
+        return Bytes.toBytes(s);
+    }
+
+    private static String string(KeyValue kv) {
+        return kv == null ? null : new String(kv.getValue());
+    }
+
+    @Test
+    public void testReadsStripWriteTime() throws Exception {
+        String dataDir = folder.newFolder().getAbsolutePath();
+        MiniBase db = MStore.create(new Config().setDataDir(dataDir).setTtlMs(60000).setMaxMemStoreSize(4 * 1024)).open();
+        try {
+            // Enough to flush some of them, so that they're read from the disk files too.
+            for (int i = 0; i < 200; i++) {
+                db.put(bytes(String.format("k%03d", i)), bytes("v" + i));
+            }
+            db.put(bytes("empty"), Bytes.EMPTY_BYTES);
+
+            assertEquals("v7", string(db.get(bytes("k007"))));
+            assertEquals(0, db.get(bytes("empty")).getValue().length);
+            List<KeyValue> kvs = db.multiGet(Arrays.asList(bytes("k000"), bytes("k199"), bytes("none")));
+            assertEquals("v0", string(kvs.get(0)));
+            assertEquals("v199", string(kvs.get(1)));
+            assertNull(kvs.get(2));
+
+            int count = 0;
+            try (Iter<KeyValue> it = db.scan(bytes("k"), bytes("l"))) {
+                while (it.hasNext()) {
+                    assertEquals("v" + count, string(it.next()));
+                    count++;
+                }
+            }
+            assertEquals(200, count);
+            try (Iter<KeyValue> it = db.reverseScan(bytes("k"), bytes("l"))) {
+                assertEquals("v199", string(it.next()));
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testExpiredValuesHidden() throws Exception {
+        String dataDir = folder.newFolder().getAbsolutePath();
+        MiniBase db = MStore.create(new Config().setDataDir(dataDir).setTtlMs(TTL_MS)).open();
+        try {
+            db.put(bytes("old"), bytes("v"));
+            Thread.sleep(TTL_MS + 100);
+            db.put(bytes("new"), bytes("v"));
+
+            assertNull(db.get(bytes("old")));
+            assertEquals("v", string(db.get(bytes("new"))));
+            assertNull(db.multiGet(Arrays.asList(bytes("old"))).get(0));
+            try (Iter<KeyValue> it = db.scan(Bytes.EMPTY_BYTES, Bytes.EMPTY_BYTES)) {
+                assertEquals("new", new String(it.next().getKey()));
+                assertFalse(it.hasNext());
+            }
+
+            // A put writes a new write time.
+            db.put(bytes("old"), bytes("again"));
+            assertEquals("again", string(db.get(bytes("old"))));
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void assertOpenFails(Config config) {
+        try {
+            MStore.create(config).open().close();
+            fail("opened with the other time to live setting");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("write time"));
+        }
+    }
+
+    @Test
+    public void testTtlSettingMustNotChange() throws Exception {
+        String dataDir = folder.newFolder().getAbsolutePath();
+        MStore.create(new Config().setDataDir(dataDir).setTtlMs(TTL_MS)).open().close();
+        assertOpenFails(new Config().setDataDir(dataDir));
+        // Any time to live reads the same values.
+        MStore.create(new Config().setDataDir(dataDir).setTtlMs(TTL_MS * 2)).open().close();
+
+        dataDir = folder.newFolder().getAbsolutePath();
+        MStore.create(new Config().setDataDir(dataDir)).open().close();
+        assertOpenFails(new Config().setDataDir(dataDir).setTtlMs(TTL_MS));
+        MStore.create(new Config().setDataDir(dataDir)).open().close();
+    }
+
+    @Test
+    public void testDataDirWithoutRecordHasNoWriteTime() throws Exception {
+        String dataDir = folder.newFolder().getAbsolutePath();
+        MiniBase db = MStore.create(new Config().setDataDir(dataDir)).open();
+        db.put(bytes("k"), bytes("v"));
+        db.close();
+
+        // A data dir written before the record existed.
+        assertTrue(new File(dataDir, TtlCompactionFilter.VALUE_FORMAT_FILE_NAME).delete());
+        assertOpenFails(new Config().setDataDir(dataDir).setTtlMs(TTL_MS));
+        db = MStore.create(new Config().setDataDir(dataDir)).open();
+        try {
+            assertEquals("v", string(db.get(bytes("k"))));
+        } finally {
+            db.close();
+        }
+    }
+
+}
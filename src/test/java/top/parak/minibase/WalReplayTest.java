@@ -0,0 +1,108 @@
+package top.parak.minibase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of replaying the write-ahead log into a mem store too small to hold it, which has
+ * to flush the replayed KeyValues before the replayed logs are deleted.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class WalReplayTest {
+
+    private static final int KEY_COUNT = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] key(int i) throws IOException {
+        return Bytes.toBytes(String.format("k%05d", i));
+    }
+
+    private static byte[] value(int i) throws IOException {
+        return Bytes.toBytes("value-" + i + "-xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx");
+    }
+
+    private static void assertAll(MiniBase db, int count) throws IOException {
+        int scanned = 0;
+        try (Iter<KeyValue> it = db.scan(Bytes.EMPTY_BYTES, Bytes.EMPTY_BYTES)) {
+            while (it.hasNext()) {
+                assertEquals(Bytes.toHex(key(scanned)), Bytes.toHex(it.next().getKey()));
+                scanned++;
+            }
+        }
+        assertEquals(count, scanned);
+        for (int i = 0; i < count; i++) {
+            KeyValue kv = db.get(key(i));
+            assertNotNull("missing key " + i, kv);
+            assertEquals(Bytes.toHex(value(i)), Bytes.toHex(kv.getValue()));
+        }
+    }
+
+    /**
+     * Leave all the keys in the write-ahead log only, by closing a store whose mem store
+     * never filled up.
+     */
+    private String writeToLogOnly() throws IOException {
+        String dataDir = folder.newFolder().getAbsolutePath();
+        MiniBase db = MStore.create(new Config().setDataDir(dataDir).setMaxMemStoreSize(64 * 1024 * 1024)).open();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            db.put(key(i), value(i));
+        }
+        db.close();
+        String[] diskFiles = new File(dataDir).list((dir, name) -> name.startsWith("data."));
+        assertTrue("the mem store was flushed", diskFiles == null || diskFiles.length == 0);
+        return dataDir;
+    }
+
+    @Test
+    public void testReopenAfterReplaySpill() throws Exception {
+        String dataDir = writeToLogOnly();
+        Config small = new Config().setDataDir(dataDir).setMaxMemStoreSize(64 * 1024);
+
+        MiniBase db = MStore.create(small).open();
+        assertAll(db, KEY_COUNT);
+        db.close();
+
+        db = MStore.create(small).open();
+        try {
+            assertAll(db, KEY_COUNT);
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testReopenAfterReplaySpillAndWrites() throws Exception {
+        String dataDir = writeToLogOnly();
+        Config small = new Config().setDataDir(dataDir).setMaxMemStoreSize(64 * 1024);
+
+        // The writes after the replay switch and flush mem tables of their own, which must
+        // not drop the replayed KeyValues along with the replayed logs.
+        MiniBase db = MStore.create(small).open();
+        for (int i = KEY_COUNT; i < 2 * KEY_COUNT; i++) {
+            db.put(key(i), value(i));
+        }
+        db.close();
+
+        db = MStore.create(small).open();
+        try {
+            assertAll(db, 2 * KEY_COUNT);
+        } finally {
+            db.close();
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package top.parak.minibase.storage;
+
+import org.junit.Test;
+import top.parak.minibase.KeyComparator;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the skip list of {@link ArenaMemTable}, against {@link SkipListMemTable}, and of
+ * freeing its slabs once the table and its iterators are all released.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class ArenaMemTableTest {
+
+    private static final int SLAB_SIZE = 4096;
+
+    private static KeyValue kv(Random random, long sequenceId) throws IOException {
+        byte[] key = Bytes.toBytes(String.format("k%04d", random.nextInt(2000)));
+        return random.nextInt(4) == 0
+                ? KeyValue.createDelete(key, sequenceId)
+                : KeyValue.createPut(key, Bytes.toBytes("v" + sequenceId), sequenceId);
+    }
+
+    private static String string(KeyValue kv) {
+        return kv == null ? null : kv.getOp() + " " + new String(kv.getKey()) + "@" + kv.getSequenceId()
+                + "=" + new String(kv.getValue());
+    }
+
+    private static List<String> forwards(SeekIter<KeyValue> it) throws IOException {
+        List<String> kvs = new ArrayList<>();
+        while (it.hasNext()) {
+            kvs.add(string(it.next()));
+        }
+        return kvs;
+    }
+
+    private static List<String> backwards(SeekIter<KeyValue> it) throws IOException {
+        List<String> kvs = new ArrayList<>();
+        while (it.hasPrev()) {
+            kvs.add(string(it.prev()));
+        }
+        return kvs;
+    }
+
+    @Test
+    public void testSameAsSkipList() throws Exception {
+        Random random = new Random(42);
+        ArenaMemTable arena = new ArenaMemTable(SLAB_SIZE, KeyComparator.BYTEWISE);
+        SkipListMemTable expected = new SkipListMemTable(KeyComparator.BYTEWISE);
+        for (long sequenceId = 1; sequenceId <= 5000; sequenceId++) {
+            KeyValue kv = kv(random, sequenceId);
+            assertEquals(expected.add(kv), arena.add(kv));
+        }
+        // The same KeyValue again adds nothing.
+        KeyValue first = expected.iterator().next();
+        assertEquals(0, arena.add(first));
+
+        try (SeekIter<KeyValue> it = arena.iterator()) {
+            assertEquals(forwards(expected.iterator()), forwards(it));
+        }
+        try (SeekIter<KeyValue> it = arena.iterator()) {
+            SeekIter<KeyValue> expectedIt = expected.iterator();
+            it.seekToLast();
+            expectedIt.seekToLast();
+            assertEquals(backwards(expectedIt), backwards(it));
+        }
+        for (int n = 0; n < 50; n++) {
+            KeyValue target = kv(random, random.nextInt(6000));
+            try (SeekIter<KeyValue> it = arena.iterator()) {
+                SeekIter<KeyValue> expectedIt = expected.iterator();
+                it.seekTo(target);
+                expectedIt.seekTo(target);
+                assertEquals(forwards(expectedIt), forwards(it));
+                it.seekForPrev(target);
+                expectedIt.seekForPrev(target);
+                assertEquals(backwards(expectedIt), backwards(it));
+            }
+            assertEquals(string(expected.get(target.getKey(), target.getSequenceId())),
+                    string(arena.get(target.getKey(), target.getSequenceId())));
+        }
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        ArenaMemTable arena = new ArenaMemTable(SLAB_SIZE, KeyComparator.BYTEWISE);
+        int threadCount = 4;
+        int perThread = 5000;
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int first = t * perThread;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perThread; i++) {
+                        // Interleave the keys of the threads, and add every KeyValue twice.
+                        int n = (first + i * 7919) % (threadCount * perThread);
+                        KeyValue kv = KeyValue.createPut(Bytes.toBytes(String.format("k%06d", n)), Bytes.toBytes("v"), 1);
+                        arena.add(kv);
+                        arena.add(kv);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        try (SeekIter<KeyValue> it = arena.iterator()) {
+            int count = 0;
+            while (it.hasNext()) {
+                assertEquals(String.format("k%06d", count), new String(it.next().getKey()));
+                count++;
+            }
+            assertEquals(threadCount * perThread, count);
+        }
+    }
+
+    @Test
+    public void testFreeAfterLastIteratorClosed() throws Exception {
+        ArenaMemTable arena = new ArenaMemTable(SLAB_SIZE, KeyComparator.BYTEWISE);
+        for (long sequenceId = 1; sequenceId <= 1000; sequenceId++) {
+            arena.add(KeyValue.createPut(Bytes.toBytes(String.format("k%04d", sequenceId)), Bytes.toBytes("v"), sequenceId));
+        }
+        assertTrue(arena.getAllocatedBytes() > 0);
+
+        SeekIter<KeyValue> it = arena.iterator();
+        arena.release();
+        // The open iterator keeps the slabs.
+        assertTrue(arena.getAllocatedBytes() > 0);
+        assertEquals(1000, forwards(it).size());
+        it.seekToLast();
+        assertEquals(1000, backwards(it).size());
+        it.close();
+        it.close();
+        assertEquals(0, arena.getAllocatedBytes());
+
+        // The table reads as empty once freed, its KeyValues are in the flushed disk file.
+        assertNull(arena.get(Bytes.toBytes("k0001"), 1));
+        try (SeekIter<KeyValue> freed = arena.iterator()) {
+            assertFalse(freed.hasNext());
+            freed.seekTo(KeyValue.createDelete(Bytes.toBytes("k0001"), 1));
+            assertFalse(freed.hasNext());
+            freed.seekToLast();
+            assertFalse(freed.hasPrev());
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package top.parak.minibase.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import top.parak.minibase.Iter;
+import top.parak.minibase.KeyValue;
+import top.parak.minibase.config.Config;
+import top.parak.minibase.toolkit.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the versions and deletes a compaction keeps, with the files left out of the
+ * compaction and the live snapshots.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class CompactionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong readPoint = new AtomicLong();
+
+    private Config              config;
+    private DiskStore           diskStore;
+    private SnapshotRegistry    snapshots;
+    private DiskStoreCompactor  compactor;
+    private List<DiskFile>      inputs;
+
+    /**
+     * Compacts the files picked by the test, and never compacts in the background.
+     */
+    private class PickedFilesStrategy implements CompactionStrategy {
+        @Override
+        public Compaction pick(List<DiskFile> diskFiles) {
+            return null;
+        }
+
+        @Override
+        public Compaction pickAll(List<DiskFile> diskFiles) {
+            return new Compaction(inputs, 0, Long.MAX_VALUE);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        config = new Config()
+                .setDataDir(folder.newFolder().getAbsolutePath())
+                .setCompactionStrategy(new PickedFilesStrategy());
+        diskStore = new DiskStore(config, null);
+        diskStore.open();
+        snapshots = new SnapshotRegistry(readPoint::get);
+        compactor = new DiskStoreCompactor(config, diskStore, snapshots);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        diskStore.close();
+    }
+
+    private static KeyValue put(String key, long sequenceId) throws IOException {
+        return KeyValue.createPut(Bytes.toBytes(key), Bytes.toBytes("v" + sequenceId), sequenceId);
+    }
+
+    private static KeyValue delete(String key, long sequenceId) throws IOException {
+        return KeyValue.createDelete(Bytes.toBytes(key), sequenceId);
+    }
+
+    /**
+     * Flush the KeyValues, given in order, into a new disk file.
+     */
+    private DiskFile flush(KeyValue... kvs) throws IOException {
+        Iterator<KeyValue> it = Arrays.asList(kvs).iterator();
+        new DiskStoreFlusher(diskStore).flush(new Iter<KeyValue>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public KeyValue next() {
+                return it.next();
+            }
+        });
+        for (KeyValue kv : kvs) {
+            readPoint.set(Math.max(readPoint.get(), kv.getSequenceId()));
+        }
+        List<DiskFile> diskFiles = diskStore.getDiskFiles();
+        return diskFiles.get(diskFiles.size() - 1);
+    }
+
+    private void compact(DiskFile... diskFiles) throws IOException {
+        inputs = Arrays.asList(diskFiles);
+        compactor.compact();
+    }
+
+    /**
+     * Dump all the versions left in the disk store, as {@code op key@sequenceId}.
+     */
+    private List<String> dump() throws IOException {
+        List<String> versions = new ArrayList<>();
+        try (Iter<KeyValue> it = diskStore.createIterator()) {
+            while (it.hasNext()) {
+                KeyValue kv = it.next();
+                versions.add(kv.getOp() + " " + new String(kv.getKey(), "UTF-8") + "@" + kv.getSequenceId());
+            }
+        }
+        return versions;
+    }
+
+    @Test
+    public void testDropDeleteWithoutOlderVersionsOutside() throws Exception {
+        DiskFile older = flush(put("a", 1), put("b", 2));
+        DiskFile newer = flush(delete("a", 3));
+
+        compact(older, newer);
+        assertEquals(Arrays.asList("Put b@2"), dump());
+    }
+
+    @Test
+    public void testDropDeleteWithOnlyNewerVersionsOutside() throws Exception {
+        DiskFile older = flush(put("a", 1));
+        DiskFile newer = flush(delete("a", 2), put("b", 3));
+        flush(put("a", 4));
+
+        // The file left out only holds a version newer than the delete.
+        compact(older, newer);
+        assertEquals(Arrays.asList("Put a@4", "Put b@3"), dump());
+    }
+
+    @Test
+    public void testKeepDeleteWithOlderVersionOutside() throws Exception {
+        flush(put("a", 1));
+        DiskFile newer = flush(delete("a", 2), put("b", 3));
+
+        // The delete still hides the put of the file left out.
+        compact(newer);
+        assertEquals(Arrays.asList("Delete a@2", "Put a@1", "Put b@3"), dump());
+    }
+
+    @Test
+    public void testDropExpiredValues() throws Exception {
+        long ttlMs = 60000;
+        long now = System.currentTimeMillis();
+        DiskFile diskFile = flush(
+                KeyValue.createPut(Bytes.toBytes("a"), TtlCompactionFilter.appendWriteTime(Bytes.toBytes("v"), now - 2 * ttlMs), 1),
+                KeyValue.createPut(Bytes.toBytes("b"), TtlCompactionFilter.appendWriteTime(Bytes.toBytes("v"), now), 2));
+
+        // An expired put turns into a delete, which hides nothing older and goes too.
+        compactor = new DiskStoreCompactor(config.setTtlMs(ttlMs), diskStore, snapshots);
+        compact(diskFile);
+        assertEquals(Arrays.asList("Put b@2"), dump());
+    }
+
+    @Test
+    public void testKeepVersionsOfLiveSnapshot() throws Exception {
+        DiskFile first = flush(put("a", 1), put("b", 2));
+        snapshots.acquire(2);
+        DiskFile second = flush(put("a", 3), delete("b", 4));
+
+        // The snapshot still reads a@1 and b@2, and so needs the delete of b to hide b@2
+        // from the reads after it.
+        compact(first, second);
+        assertEquals(Arrays.asList("Put a@3", "Put a@1", "Delete b@4", "Put b@2"), dump());
+
+        snapshots.release(2);
+        compact(diskStore.getDiskFiles().toArray(new DiskFile[0]));
+        assertEquals(Arrays.asList("Put a@3"), dump());
+    }
+
+}
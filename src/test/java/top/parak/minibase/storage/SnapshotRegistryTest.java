@@ -0,0 +1,62 @@
+package top.parak.minibase.storage;
+
+import org.junit.Test;
+
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link SnapshotRegistry}, whose live sequence ids are read by compactions while
+ * reads pin and release them.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class SnapshotRegistryTest {
+
+    @Test
+    public void testLiveSequenceIds() {
+        AtomicLong readPoint = new AtomicLong(10);
+        SnapshotRegistry snapshots = new SnapshotRegistry(readPoint::get);
+        snapshots.acquire(3);
+        snapshots.acquire(3);
+        snapshots.acquire(7);
+        assertEquals("[3, 7, 10]", snapshots.getLiveSequenceIds().toString());
+
+        snapshots.release(3);
+        snapshots.release(7);
+        assertEquals("[3, 10]", snapshots.getLiveSequenceIds().toString());
+        snapshots.release(3);
+        assertEquals("[10]", snapshots.getLiveSequenceIds().toString());
+    }
+
+    @Test
+    public void testLiveSequenceIdsWhileReleasing() throws Exception {
+        SnapshotRegistry snapshots = new SnapshotRegistry(() -> Long.MAX_VALUE);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reads = new Thread(() -> {
+            for (long sequenceId = 1; running.get(); sequenceId++) {
+                snapshots.acquire(sequenceId);
+                snapshots.acquire(sequenceId + 1);
+                snapshots.release(sequenceId);
+                snapshots.release(sequenceId + 1);
+            }
+        });
+        reads.start();
+        try {
+            long deadline = System.currentTimeMillis() + 1000;
+            while (System.currentTimeMillis() < deadline) {
+                NavigableSet<Long> live = snapshots.getLiveSequenceIds();
+                assertTrue(live.contains(Long.MAX_VALUE));
+            }
+        } finally {
+            running.set(false);
+            reads.join();
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package top.parak.minibase.toolkit;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link Bytes#compare(byte[], int, int, byte[], int, int)}, which compares 8
+ * bytes at a time where it can.
+ *
+ * @author Khighness
+ * @since 2026-10-17
+ */
+public class BytesTest {
+
+    private static int compareBytewise(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int minLength = Math.min(aLength, bLength);
+        for (int i = 0; i < minLength; i++) {
+            int x = a[aOffset + i] & 0xFF;
+            int y = b[bOffset + i] & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    @Test
+    public void testCompareMatchesBytewise() {
+        Random random = new Random(42);
+        for (int n = 0; n < 100000; n++) {
+            byte[] a = new byte[random.nextInt(40)];
+            random.nextBytes(a);
+            byte[] b = a.clone();
+            // Differ at a random byte, by a random length, or not at all, at unaligned offsets.
+            if (b.length > 0 && random.nextBoolean()) {
+                b[random.nextInt(b.length)] = (byte) random.nextInt();
+            }
+            int aOffset = a.length == 0 ? 0 : random.nextInt(a.length);
+            int bOffset = Math.min(aOffset, b.length);
+            int aLength = random.nextInt(a.length - aOffset + 1);
+            int bLength = random.nextInt(b.length - bOffset + 1);
+            assertEquals(Integer.signum(compareBytewise(a, aOffset, aLength, b, bOffset, bLength)),
+                    Integer.signum(Bytes.compare(a, aOffset, aLength, b, bOffset, bLength)));
+        }
+    }
+
+    @Test
+    public void testCompareUnsigned() {
+        assertEquals(-1, Integer.signum(Bytes.compare(new byte[]{0, 0, 0, 0, 0, 0, 0, 0x7F},
+                new byte[]{0, 0, 0, 0, 0, 0, 0, (byte) 0x80})));
+        assertEquals(1, Integer.signum(Bytes.compare(new byte[]{(byte) 0xFF, 0, 0, 0, 0, 0, 0, 0},
+                new byte[]{0x01, 0, 0, 0, 0, 0, 0, 0})));
+    }
+
+    @Test
+    public void testCompareOutOfBounds() {
+        byte[] a = new byte[16];
+        int[][] regions = {{-1, 8}, {0, -1}, {9, 8}, {0, 17}, {Integer.MAX_VALUE, 8}};
+        for (int[] region : regions) {
+            try {
+                Bytes.compare(a, region[0], region[1], a, 0, 16);
+                fail("region " + region[0] + "+" + region[1]);
+            } catch (ArrayIndexOutOfBoundsException expected) {
+                // Never read past the array.
+            }
+            try {
+                Bytes.compare(a, 0, 16, a, region[0], region[1]);
+                fail("region " + region[0] + "+" + region[1]);
+            } catch (ArrayIndexOutOfBoundsException expected) {
+                // Never read past the array.
+            }
+        }
+    }
+
+}